@@ -0,0 +1,7 @@
+#!/bin/sh
+# Starts the reference ilastik4ij worker with the Python interpreter of an ilastik installation.
+# Set ILASTIK_DIR to the ilastik installation, e.g. /opt/ilastik-1.3.3-Linux, and configure this
+# script as the worker executable in Plugins > ilastik > Configure ilastik executable location.
+ILASTIK_DIR="${ILASTIK_DIR:-/opt/ilastik}"
+export PYTHONPATH="$ILASTIK_DIR/ilastik-meta/ilastik:$ILASTIK_DIR/ilastik-meta/lazyflow:$ILASTIK_DIR/ilastik-meta/volumina:$PYTHONPATH"
+exec "$ILASTIK_DIR/bin/python" "$(dirname "$0")/ilastik4ij_worker.py" "$@"
@@ -0,0 +1,63 @@
+"""
+Reference worker for the ilastik4ij worker protocol, see IlastikWorker in ilastik4ij.
+
+Loads an ilastik project once and then runs one headless batch job per line read from stdin. Every
+line holds the headless arguments of a job (everything but --headless and --project) separated by
+tabs. Each job is answered on stdout with a line "ilastik4ij-job-done", or "ilastik4ij-job-failed"
+followed by a message. Closing stdin ends the worker.
+
+Run it with the Python interpreter bundled with ilastik, e.g. through ilastik4ij-worker.sh:
+
+    <ilastik>/bin/python ilastik4ij_worker.py --project=<project file>
+
+Written against the headless API of ilastik 1.3: the export and batch processing applets of the
+workflow parse the job arguments, like ilastik does for --headless runs.
+"""
+import sys
+import traceback
+
+JOB_DONE = "ilastik4ij-job-done"
+JOB_FAILED = "ilastik4ij-job-failed"
+
+
+def load_project(project):
+    import ilastik_main
+
+    args, _ = ilastik_main.parser.parse_known_args(["--headless", "--project=" + project])
+    return ilastik_main.main(args)
+
+
+def run_job(workflow, job_args):
+    export_args, other_args = workflow.dataExportApplet.parse_known_cmdline_args(job_args)
+    input_args, unused_args = workflow.batchProcessingApplet.parse_known_cmdline_args(other_args)
+    if unused_args:
+        raise ValueError("Unknown job arguments: {}".format(unused_args))
+    workflow.dataExportApplet.configure_operator_with_parsed_args(export_args)
+    workflow.batchProcessingApplet.run_export_from_parsed_args(input_args)
+
+
+def main(argv):
+    projects = [arg[len("--project="):] for arg in argv if arg.startswith("--project=")]
+    if len(projects) != 1:
+        sys.stderr.write("usage: ilastik4ij_worker.py --project=<project file>\n")
+        return 2
+
+    # the replies share stdout with ilastik's own output, so it is flushed after every reply
+    shell = load_project(projects[0])
+    workflow = shell.projectManager.workflow
+    for line in iter(sys.stdin.readline, ""):
+        job_args = [arg for arg in line.rstrip("\r\n").split("\t") if arg]
+        try:
+            run_job(workflow, job_args)
+            sys.stdout.write(JOB_DONE + "\n")
+        except Exception as e:
+            traceback.print_exc()
+            # the reply must fit on one line
+            sys.stdout.write("{} {}\n".format(JOB_FAILED, str(e).replace("\n", " ")))
+        sys.stdout.flush()
+    shell.closeCurrentProject()
+    return 0
+
+
+if __name__ == "__main__":
+    sys.exit(main(sys.argv[1:]))
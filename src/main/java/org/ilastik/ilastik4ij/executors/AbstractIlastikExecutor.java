@@ -1,26 +1,45 @@
 package org.ilastik.ilastik4ij.executors;
 
+import ch.systemsx.cisd.hdf5.HDF5DataSetInformation;
 import net.imagej.ImgPlus;
+import net.imagej.axis.Axes;
+import net.imagej.axis.AxisType;
 import net.imglib2.type.NativeType;
 import net.imglib2.type.numeric.RealType;
+import net.imglib2.util.Intervals;
+import org.ilastik.ilastik4ij.hdf5.Hdf5DataSetIndex;
 import org.ilastik.ilastik4ij.hdf5.Hdf5DataSetReader;
 import org.ilastik.ilastik4ij.hdf5.Hdf5DataSetWriter;
+import org.ilastik.ilastik4ij.util.Hdf5Utils;
 import org.ilastik.ilastik4ij.util.IOUtils;
 import org.scijava.app.StatusService;
 import org.scijava.log.LogService;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 public abstract class AbstractIlastikExecutor {
 
     protected static final String rawInputTempFile = "tempFileRawInput";
     protected static final String outputTempFile = "tempFileOutput";
     protected static final String secondInputTempFile = "tempFileSegmentationOrProbabilitiesInput";
+    private static final String OUTPUT_SUFFIX = "_out.h5";
+    // axis order of the images staged for ilastik, and of Hdf5DataSetReader
+    private static final List<AxisType> STAGED_AXES = Arrays.asList(Axes.X, Axes.Y, Axes.CHANNEL, Axes.Z, Axes.TIME);
 
     private final int numThreads;
     private final int maxRamMb;
@@ -30,6 +49,14 @@ public abstract class AbstractIlastikExecutor {
     protected final LogService logService;
     protected final StatusService statusService;
 
+    private File workerExecutable;
+    private int workerIdleTimeoutSeconds;
+    private int workerJobTimeoutMinutes;
+    private String scratchDirectory;
+    private boolean passThroughHdf5;
+    private PredictionCache predictionCache;
+    private IlastikProcessPool processPool;
+
     public enum PixelPredictionType {
         Segmentation,
         Probabilities
@@ -46,50 +73,344 @@ public abstract class AbstractIlastikExecutor {
         this.statusService = statusService;
     }
 
-    protected abstract List<String> buildCommandLine(Map<String, String> tempFiles, PixelPredictionType pixelPredictionType);
+    /**
+     * Runs the jobs of this executor on a persistent {@link IlastikWorker} instead of starting ilastik for every call.
+     *
+     * @param workerExecutable   executable speaking the worker protocol of {@link IlastikWorker}, started with
+     *                           {@code --project=<project file>}, or null to start ilastik for every call
+     * @param idleTimeoutSeconds seconds after which an idle worker is stopped
+     * @param jobTimeoutMinutes  minutes after which a job is considered hung and its worker is killed, or 0 for no limit
+     */
+    public void setWorker(File workerExecutable, int idleTimeoutSeconds, int jobTimeoutMinutes) {
+        // an emptied file option arrives as an empty path
+        this.workerExecutable = workerExecutable == null || workerExecutable.getPath().isEmpty() ? null : workerExecutable;
+        this.workerIdleTimeoutSeconds = idleTimeoutSeconds;
+        this.workerJobTimeoutMinutes = jobTimeoutMinutes;
+    }
+
+    /**
+     * @param scratchDirectory directory for the files handed to ilastik, see {@link IOUtils#getScratchDirectory(String, long, long)}
+     */
+    public void setScratchDirectory(String scratchDirectory) {
+        this.scratchDirectory = scratchDirectory;
+    }
+
+    /**
+     * Only images returned by {@link Hdf5DataSetReader}, directly or as the dataset published by Import HDF5,
+     * carry the file they were read from. The file's modification time is the only check for staleness, so
+     * this is off by default.
+     *
+     * @param passThroughHdf5 whether to pass inputs read from HDF5 to ilastik as is instead of staging them,
+     *                        if the file did not change since; only enable if the images are not modified in place
+     */
+    public void setPassThroughHdf5(boolean passThroughHdf5) {
+        this.passThroughHdf5 = passThroughHdf5;
+    }
+
+    /**
+     * Splits batches of inputs over the slots of a pool, so that several ilastik processes run at once, each
+     * within the thread and RAM budget of its slot instead of the one given to the constructor.
+     *
+     * The executor waits for its slots, so it must not run inside a job of the same pool.
+     *
+     * @param processPool pool shared by the executors, or null to run batches in a single ilastik process
+     */
+    public void setProcessPool(IlastikProcessPool processPool) {
+        this.processPool = processPool;
+    }
+
+    /**
+     * @return number of ilastik processes a batch is split over
+     */
+    protected int getNumProcesses() {
+        return processPool == null ? 1 : processPool.getNumProcesses();
+    }
+
+    /**
+     * Looks up the outputs of inputs that were processed before in a {@link PredictionCache} instead of running
+     * ilastik on them again.
+     *
+     * @param directory directory of the cache, or null to disable it
+     * @param maxSizeMb size limit of the cache in MB
+     */
+    public void setPredictionCache(File directory, long maxSizeMb) {
+        // an emptied file option arrives as an empty path
+        this.predictionCache = directory == null || directory.getPath().isEmpty()
+                ? null : new PredictionCache(directory, maxSizeMb << 20);
+    }
+
+    /**
+     * Builds the command line of a run of ilastik on a single input. Only called by the default of
+     * {@link #buildBatchCommandLine(Map, PixelPredictionType)}, for executors that do not support batches.
+     *
+     * @param tempFiles staged input file per role, and the output filename format under {@link #outputTempFile}
+     */
+    protected List<String> buildCommandLine(Map<String, String> tempFiles, PixelPredictionType pixelPredictionType) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " must override buildBatchCommandLine or buildCommandLine");
+    }
+
+    /**
+     * Builds the command line of a run of ilastik on several inputs. The default handles a single input with
+     * {@link #buildCommandLine(Map, PixelPredictionType)}; override it to support batches.
+     *
+     * @param tempFiles staged input files per role, in the same order for all roles, and the output filename
+     *                  format under {@link #outputTempFile}
+     */
+    protected List<String> buildBatchCommandLine(Map<String, List<String>> tempFiles, PixelPredictionType pixelPredictionType) {
+        if (tempFiles.get(rawInputTempFile).size() != 1) {
+            throw new UnsupportedOperationException(getClass().getSimpleName() + " cannot run ilastik on several inputs at once");
+        }
+        Map<String, String> singleTempFiles = new LinkedHashMap<>();
+        tempFiles.forEach((role, files) -> singleTempFiles.put(role, files.get(0)));
+        return buildCommandLine(singleTempFiles, pixelPredictionType);
+    }
 
     protected <T extends NativeType<T>> ImgPlus<T> executeIlastik(ImgPlus<? extends RealType<?>> rawInputImg,
                                                                   ImgPlus<? extends RealType<?>> secondInputImg,
                                                                   PixelPredictionType pixelPredictionType) throws IOException {
-        final Map<String, String> tempFiles = prepareTempFiles(secondInputImg != null);
+        List<ImgPlus<T>> outputImgs = executeIlastik(Collections.singletonList(rawInputImg),
+                secondInputImg == null ? null : Collections.singletonList(secondInputImg), pixelPredictionType);
+        return outputImgs.get(0);
+    }
+
+    /**
+     * Runs ilastik once on all inputs, so that starting ilastik and loading the project is paid once per batch.
+     *
+     * @param secondInputImgs second input for every raw input, or null if the workflow has a single input
+     * @return outputs in the order of the inputs
+     */
+    protected <T extends NativeType<T>> List<ImgPlus<T>> executeIlastik(List<? extends ImgPlus<? extends RealType<?>>> rawInputImgs,
+                                                                        List<? extends ImgPlus<? extends RealType<?>>> secondInputImgs,
+                                                                        PixelPredictionType pixelPredictionType) throws IOException {
+        if (rawInputImgs.isEmpty()) {
+            throw new IllegalArgumentException("At least one input image is required");
+        }
+        if (secondInputImgs != null && secondInputImgs.size() != rawInputImgs.size()) {
+            throw new IllegalArgumentException(String.format("Got %d raw inputs but %d second inputs",
+                    rawInputImgs.size(), secondInputImgs.size()));
+        }
+
+        if (predictionCache == null) {
+            return runInProcesses(rawInputImgs, secondInputImgs, pixelPredictionType, null);
+        }
+
+        // outputs are looked up by their inputs, ilastik only runs on the inputs without a stored output
+        final String projectHash = PredictionCache.hashProject(projectFileName);
+        // outputs change with the ilastik installation that computes them
+        final String ilastikVersion = PredictionCache.getFileVersion(executableFilePath)
+                + (workerExecutable == null ? "" : PredictionCache.getFileVersion(workerExecutable));
+        final List<ImgPlus<T>> outputImgs = new ArrayList<>();
+        final List<Integer> missing = new ArrayList<>();
+        final List<String> missingKeys = new ArrayList<>();
+        for (int i = 0; i < rawInputImgs.size(); i++) {
+            String key = PredictionCache.key(getClass().getName(), String.valueOf(pixelPredictionType), ilastikVersion, projectHash,
+                    PredictionCache.hashImage(rawInputImgs.get(i)),
+                    secondInputImgs == null ? "" : PredictionCache.hashImage(secondInputImgs.get(i)));
+            File cached = predictionCache.get(key);
+            if (cached != null) {
+                logService.info("Using stored ilastik output " + cached);
+                outputImgs.add(new Hdf5DataSetReader<T>(cached.getPath(), "exported_data",
+                        "tzyxc", logService, statusService).read());
+            } else {
+                outputImgs.add(null);
+                missing.add(i);
+                missingKeys.add(key);
+            }
+        }
+        if (!missing.isEmpty()) {
+            List<ImgPlus<T>> computed = runInProcesses(
+                    missing.stream().map(rawInputImgs::get).collect(Collectors.toList()),
+                    secondInputImgs == null ? null : missing.stream().map(secondInputImgs::get).collect(Collectors.toList()),
+                    pixelPredictionType, missingKeys);
+            for (int i = 0; i < missing.size(); i++) {
+                outputImgs.set(missing.get(i), computed.get(i));
+            }
+        }
+        return outputImgs;
+    }
+
+    /**
+     * Runs ilastik on the inputs, split into consecutive parts over the slots of the process pool if one is set.
+     *
+     * @param cacheKeys keys to store the outputs under in the prediction cache, or null
+     */
+    private <T extends NativeType<T>> List<ImgPlus<T>> runInProcesses(List<? extends ImgPlus<? extends RealType<?>>> rawInputImgs,
+                                                                      List<? extends ImgPlus<? extends RealType<?>>> secondInputImgs,
+                                                                      PixelPredictionType pixelPredictionType,
+                                                                      List<String> cacheKeys) throws IOException {
+        final int numParts = Math.min(getNumProcesses(), rawInputImgs.size());
+        if (numParts == 1) {
+            return runIlastik(rawInputImgs, secondInputImgs, pixelPredictionType, cacheKeys, numThreads, maxRamMb);
+        }
+
+        final List<CompletableFuture<List<ImgPlus<T>>>> parts = new ArrayList<>();
+        for (int part = 0; part < numParts; part++) {
+            final int from = part * rawInputImgs.size() / numParts;
+            final int to = (part + 1) * rawInputImgs.size() / numParts;
+            parts.add(processPool.submit((slotThreads, slotRamMb) -> runIlastik(rawInputImgs.subList(from, to),
+                    secondInputImgs == null ? null : secondInputImgs.subList(from, to), pixelPredictionType,
+                    cacheKeys == null ? null : cacheKeys.subList(from, to), slotThreads, slotRamMb)));
+        }
+        final List<ImgPlus<T>> outputImgs = new ArrayList<>();
+        try {
+            for (CompletableFuture<List<ImgPlus<T>>> part : parts) {
+                outputImgs.addAll(part.join());
+            }
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw e;
+        }
+        return outputImgs;
+    }
+
+    /**
+     * @param cacheKeys keys to store the outputs under in the prediction cache, or null
+     * @param numThreads threads ilastik may use, or a negative number for no restriction
+     * @param maxRamMb RAM in MB ilastik may use
+     */
+    private <T extends NativeType<T>> List<ImgPlus<T>> runIlastik(List<? extends ImgPlus<? extends RealType<?>>> rawInputImgs,
+                                                                  List<? extends ImgPlus<? extends RealType<?>>> secondInputImgs,
+                                                                  PixelPredictionType pixelPredictionType,
+                                                                  List<String> cacheKeys, int numThreads, int maxRamMb) throws IOException {
+        final File scratch = IOUtils.getScratchDirectory(scratchDirectory,
+                estimateScratchBytes(rawInputImgs, true) + (secondInputImgs == null ? 0 : estimateScratchBytes(secondInputImgs, false)),
+                (long) Math.max(0, this.maxRamMb) << 20);
+        // a directory of its own holds the files of this run, so that ilastik's outputs are known and removed with it
+        final File runDirectory = IOUtils.createTemporaryDirectory(scratch);
         try {
+            final Map<String, List<String>> tempFiles = prepareTempFiles(rawInputImgs.size(), secondInputImgs != null, runDirectory);
 
-            stageInputFiles(rawInputImg, secondInputImg, tempFiles);
+            Map<String, List<String>> inputArgs = stageInputFiles(rawInputImgs, secondInputImgs, tempFiles);
 
-            List<String> commandLine = buildCommandLine(tempFiles, pixelPredictionType);
+            List<String> commandLine = buildBatchCommandLine(inputArgs, pixelPredictionType);
 
-            executeCommandLine(commandLine);
+            executeCommandLine(commandLine, getProcessEnvironment(numThreads, maxRamMb));
 
-            ImgPlus<T> outputImg = new Hdf5DataSetReader<T>(tempFiles.get(outputTempFile), "exported_data",
-                    "tzyxc", logService, statusService).read();
+            List<ImgPlus<T>> outputImgs = new ArrayList<>();
+            for (String rawInput : tempFiles.get(rawInputTempFile)) {
+                File outputFile = findOutputFile(rawInput);
+                if (cacheKeys != null) {
+                    predictionCache.put(cacheKeys.get(outputImgs.size()), outputFile);
+                }
+                outputImgs.add(new Hdf5DataSetReader<T>(outputFile.getPath(), "exported_data",
+                        "tzyxc", logService, statusService).read());
+            }
 
-            return outputImg;
+            return outputImgs;
         } finally {
-            deleteTempFiles(tempFiles);
+            IOUtils.deleteRecursively(runDirectory);
+            logService.info("Deleted tmp directory: " + runDirectory);
+        }
+    }
+
+    /**
+     * @return the arguments for {@link #buildBatchCommandLine}: the staged files, or the datasets of inputs passed as is
+     */
+    private Map<String, List<String>> stageInputFiles(List<? extends ImgPlus<? extends RealType<?>>> rawInputImgs,
+                                                      List<? extends ImgPlus<? extends RealType<?>>> secondInputImgs,
+                                                      Map<String, List<String>> tempFiles) {
+        Map<String, List<String>> inputArgs = new LinkedHashMap<>(tempFiles);
+        inputArgs.put(rawInputTempFile, stageInputs(rawInputImgs, tempFiles.get(rawInputTempFile)));
+        if (secondInputImgs != null) {
+            inputArgs.put(secondInputTempFile, stageInputs(secondInputImgs, tempFiles.get(secondInputTempFile)));
         }
+        return Collections.unmodifiableMap(inputArgs);
     }
 
-    private void stageInputFiles(ImgPlus<? extends RealType<?>> rawInputImg, ImgPlus<? extends RealType<?>> secondInputImg,
-                                 Map<String, String> tempFiles) {
+    private List<String> stageInputs(List<? extends ImgPlus<? extends RealType<?>>> inputImgs, List<String> tempFiles) {
         int compressionLevel = 1;
 
-        new Hdf5DataSetWriter(rawInputImg, tempFiles.get(rawInputTempFile), "data",
-                compressionLevel, logService, statusService).write();
+        List<String> inputArgs = new ArrayList<>();
+        for (int i = 0; i < inputImgs.size(); i++) {
+            String dataset = passThroughHdf5 ? getPassThroughDataset(inputImgs.get(i)) : null;
+            if (dataset != null && linkFile((String) inputImgs.get(i).getProperties().get(Hdf5DataSetReader.FILE_PROPERTY),
+                    tempFiles.get(i))) {
+                // the link is named like a staged file, so ilastik names the output as usual
+                inputArgs.add(tempFiles.get(i) + (dataset.startsWith("/") ? dataset : "/" + dataset));
+            } else {
+                new Hdf5DataSetWriter(inputImgs.get(i), tempFiles.get(i), "data",
+                        compressionLevel, logService, statusService).write();
+                inputArgs.add(tempFiles.get(i));
+            }
+        }
+        return inputArgs;
+    }
+
+    /**
+     * @return the dataset the image was imported from if ilastik can read it instead of a staged copy: an unchanged
+     * file, and a complete 5D dataset of the same type, imported with the TZYXC axis order of the staged files
+     */
+    private static String getPassThroughDataset(ImgPlus<? extends RealType<?>> img) {
+        Map<String, Object> properties = img.getProperties();
+        Object file = properties.get(Hdf5DataSetReader.FILE_PROPERTY);
+        Object dataset = properties.get(Hdf5DataSetReader.DATASET_PROPERTY);
+        if (!(file instanceof String) || !(dataset instanceof String)
+                || !"tzyxc".equals(properties.get(Hdf5DataSetReader.AXES_PROPERTY))
+                || !Objects.equals(properties.get(Hdf5DataSetReader.LAST_MODIFIED_PROPERTY), new File((String) file).lastModified())) {
+            return null;
+        }
+        if (img.numDimensions() != STAGED_AXES.size()) {
+            return null;
+        }
+        for (int d = 0; d < img.numDimensions(); d++) {
+            if (img.axis(d).type() != STAGED_AXES.get(d) || img.min(d) != 0) {
+                return null;
+            }
+        }
 
-        if (secondInputImg != null) {
-            new Hdf5DataSetWriter(secondInputImg, tempFiles.get(secondInputTempFile), "data",
-                    compressionLevel, logService, statusService).write();
+        HDF5DataSetInformation dsInfo;
+        try {
+            dsInfo = Hdf5DataSetIndex.forFile((String) file).getDataSetInformation((String) dataset);
+        } catch (RuntimeException e) {
+            return null;
+        }
+        long[] dims = dsInfo.getDimensions();
+        // the dataset is TZYXC, the image XYCZT
+        if (dims.length != 5 || !Arrays.equals(new long[]{dims[3], dims[2], dims[4], dims[1], dims[0]}, Intervals.dimensionsAsLongArray(img))) {
+            return null;
         }
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        String dtype = Hdf5Utils.getDtype((Class) img.firstElement().getClass());
+        return dtype.equals(Hdf5Utils.getTypeInfo(dsInfo)) ? (String) dataset : null;
     }
 
-    private Map<String, String> prepareTempFiles(boolean hasSecondInputImg) throws IOException {
-        LinkedHashMap<String, String> tempFiles = new LinkedHashMap<>();
+    /**
+     * @return true if the link was created, false if links are not supported, e.g. on Windows without privileges
+     */
+    private boolean linkFile(String target, String link) {
+        try {
+            Files.createSymbolicLink(Paths.get(link), Paths.get(target));
+            logService.info(String.format("Passing %s to ilastik without staging", target));
+            return true;
+        } catch (IOException | UnsupportedOperationException e) {
+            logService.warn("Could not link " + target + ", staging it instead: " + e.getMessage());
+            return false;
+        }
+    }
 
-        tempFiles.put(rawInputTempFile, IOUtils.getTemporaryFileName("_in_raw.h5"));
-        tempFiles.put(outputTempFile, IOUtils.getTemporaryFileName("_out.h5"));
+    private Map<String, List<String>> prepareTempFiles(int numInputs, boolean hasSecondInputImg, File runDirectory) {
+        LinkedHashMap<String, List<String>> tempFiles = new LinkedHashMap<>();
+
+        // names of equal length, so that no nickname is the prefix of another one
+        String indexFormat = "%0" + String.valueOf(numInputs - 1).length() + "d";
+        List<String> rawInputs = new ArrayList<>();
+        List<String> secondInputs = new ArrayList<>();
+        for (int i = 0; i < numInputs; i++) {
+            String index = String.format(indexFormat, i);
+            rawInputs.add(new File(runDirectory, "in_raw_" + index + ".h5").getPath());
+            if (hasSecondInputImg) {
+                secondInputs.add(new File(runDirectory, "in_2nd_" + index + ".h5").getPath());
+            }
+        }
+        tempFiles.put(rawInputTempFile, rawInputs);
+        // ilastik names the outputs after the raw inputs
+        tempFiles.put(outputTempFile, Collections.singletonList(
+                runDirectory.getPath() + File.separator + "{nickname}" + OUTPUT_SUFFIX));
 
         if (hasSecondInputImg) {
-            tempFiles.put(secondInputTempFile, IOUtils.getTemporaryFileName("_in_2nd.h5"));
+            tempFiles.put(secondInputTempFile, secondInputs);
         }
 
         logService.info("Temporary files: " + tempFiles);
@@ -97,22 +418,49 @@ public abstract class AbstractIlastikExecutor {
         return Collections.unmodifiableMap(tempFiles);
     }
 
-    private void deleteTempFiles(Map<String, String> tempFiles) {
-        for (String tempFilePath : tempFiles.values()) {
-            final File tempFile = new File(tempFilePath);
-            if (tempFile.exists()) {
-                tempFile.delete();
-                logService.info("Deleted tmp file: " + tempFile);
+    /**
+     * @param withOutputs whether ilastik writes an output for each of the images
+     * @return generous estimate of the size of the staged images and their outputs: all as float32, uncompressed,
+     * leaving out the images passed as is
+     */
+    private long estimateScratchBytes(List<? extends ImgPlus<? extends RealType<?>>> imgs, boolean withOutputs) {
+        long numPixels = 0;
+        for (ImgPlus<? extends RealType<?>> img : imgs) {
+            if (!passThroughHdf5 || getPassThroughDataset(img) == null) {
+                numPixels += Intervals.numElements(img);
+            }
+            if (withOutputs) {
+                numPixels += Intervals.numElements(img);
             }
         }
+        return numPixels * Float.BYTES;
     }
 
-    private void executeCommandLine(List<String> commandLine) throws IOException {
+    /**
+     * @return the file ilastik wrote for the raw input into the run directory, named after the input's nickname,
+     * which includes the dataset path for inputs passed as is
+     */
+    private static File findOutputFile(String rawInput) throws IOException {
+        File input = new File(rawInput);
+        // the nickname of an input is its file name without extension
+        String nickname = input.getName().substring(0, input.getName().lastIndexOf('.'));
+        File[] candidates = input.getParentFile().listFiles((dir, name) -> name.startsWith(nickname) && name.endsWith(OUTPUT_SUFFIX));
+        if (candidates == null || candidates.length != 1) {
+            throw new IOException("ilastik did not write an output for " + rawInput);
+        }
+        return candidates[0];
+    }
+
+    private void executeCommandLine(List<String> commandLine, Map<String, String> environment) throws IOException {
+        if (workerExecutable != null) {
+            executeOnWorker(commandLine, environment);
+            return;
+        }
         logService.info("Running ilastik headless command:");
         logService.info(commandLine.toString());
 
         ProcessBuilder pB = new ProcessBuilder(commandLine);
-        configureProcessBuilderEnvironment(pB);
+        pB.environment().putAll(environment);
 
         // run ilastik
         final Process p = pB.start();
@@ -137,14 +485,32 @@ public abstract class AbstractIlastikExecutor {
         logService.info("ilastik execution finished successfully!");
     }
 
-    private void configureProcessBuilderEnvironment(ProcessBuilder pb) {
-        final Map<String, String> env = pb.environment();
-        if (this.numThreads >= 0) {
-            env.put("LAZYFLOW_THREADS", String.valueOf(this.numThreads));
+    private void executeOnWorker(List<String> commandLine, Map<String, String> environment) throws IOException {
+        List<String> workerCommand = Arrays.asList(workerExecutable.getAbsolutePath(),
+                "--project=" + projectFileName.getAbsolutePath());
+        // the worker already runs headless with the project loaded, it only needs the job arguments
+        List<String> jobArgs = commandLine.stream()
+                .skip(1)
+                .filter(arg -> !arg.equals("--headless") && !arg.startsWith("--project="))
+                .collect(Collectors.toList());
+        IlastikWorker worker = IlastikWorker.acquire(workerCommand, environment,
+                TimeUnit.SECONDS.toMillis(workerIdleTimeoutSeconds), TimeUnit.MINUTES.toMillis(workerJobTimeoutMinutes), logService);
+        try {
+            worker.runJob(jobArgs);
+        } finally {
+            IlastikWorker.release(worker);
+        }
+    }
+
+    private static Map<String, String> getProcessEnvironment(int numThreads, int maxRamMb) {
+        final Map<String, String> env = new LinkedHashMap<>();
+        if (numThreads >= 0) {
+            env.put("LAZYFLOW_THREADS", String.valueOf(numThreads));
         }
-        env.put("LAZYFLOW_TOTAL_RAM_MB", String.valueOf(this.maxRamMb));
+        env.put("LAZYFLOW_TOTAL_RAM_MB", String.valueOf(maxRamMb));
         env.put("LANG", "en_US.UTF-8");
         env.put("LC_ALL", "en_US.UTF-8");
         env.put("LC_CTYPE", "en_US.UTF-8");
+        return env;
     }
 }
@@ -0,0 +1,110 @@
+package org.ilastik.ilastik4ij.executors;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs several ilastik processes at once on machines with many cores and a lot of RAM.
+ * <p>
+ * A global budget of threads and RAM is split evenly into a number of process slots; every job gets the
+ * budget of one slot, which it passes to its executor, and waits in a queue while all slots are busy.
+ * For example, 64 threads and 512 GB split into 8 slots run 8 ilastik processes with 8 threads and 64 GB each:
+ * <pre>
+ * pool.submit((numThreads, maxRamMb) -&gt; new PixelClassification(executable, project, log, status,
+ *         numThreads, maxRamMb).classifyPixels(image, PixelPredictionType.Probabilities));
+ * </pre>
+ * Executors given the pool with {@link AbstractIlastikExecutor#setProcessPool} split their batches over
+ * the slots themselves.
+ */
+public class IlastikProcessPool implements Closeable {
+    private static final int MIN_RAM_MB = 256;
+
+    /**
+     * A job running one or more ilastik executions within the budget of a slot.
+     */
+    @FunctionalInterface
+    public interface Job<R> {
+        R run(int numThreads, int maxRamMb) throws IOException;
+    }
+
+    private final int numProcesses;
+    private final int threadsPerProcess;
+    private final int ramMbPerProcess;
+    private final ExecutorService executor;
+
+    /**
+     * @param numProcesses number of ilastik processes running at the same time
+     * @param totalThreads threads shared by all processes, or a negative number for all processors
+     * @param totalRamMb   RAM in MB shared by all processes
+     */
+    public IlastikProcessPool(int numProcesses, int totalThreads, long totalRamMb) {
+        if (numProcesses < 1) {
+            throw new IllegalArgumentException("At least one process is required: " + numProcesses);
+        }
+        if (totalThreads < 0) {
+            totalThreads = Runtime.getRuntime().availableProcessors();
+        }
+        if (totalRamMb / numProcesses < MIN_RAM_MB) {
+            throw new IllegalArgumentException(String.format("%d MB of RAM are not enough for %d processes of at least %d MB",
+                    totalRamMb, numProcesses, MIN_RAM_MB));
+        }
+        this.numProcesses = numProcesses;
+        this.threadsPerProcess = Math.max(1, totalThreads / numProcesses);
+        this.ramMbPerProcess = (int) Math.min(Integer.MAX_VALUE, totalRamMb / numProcesses);
+
+        final AtomicInteger slot = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(numProcesses, runnable -> {
+            Thread thread = new Thread(runnable, "ilastik-process-slot-" + slot.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public int getNumProcesses() {
+        return numProcesses;
+    }
+
+    public int getThreadsPerProcess() {
+        return threadsPerProcess;
+    }
+
+    public int getRamMbPerProcess() {
+        return ramMbPerProcess;
+    }
+
+    /**
+     * Queues a job for the next free slot.
+     *
+     * @return future of the job's result, completed exceptionally with an {@link UncheckedIOException}
+     * if the job threw an {@link IOException}
+     */
+    public <R> CompletableFuture<R> submit(Job<R> job) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return job.run(threadsPerProcess, ramMbPerProcess);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, executor);
+    }
+
+    /**
+     * Waits for the queued jobs to finish, then stops the slots.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
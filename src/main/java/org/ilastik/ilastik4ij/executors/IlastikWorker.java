@@ -0,0 +1,263 @@
+package org.ilastik.ilastik4ij.executors;
+
+import org.ilastik.ilastik4ij.util.IOUtils;
+import org.scijava.log.LogService;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A long-running ilastik process that loads its project once and then runs one headless job after
+ * the other, so that the Python startup and the project loading are paid once instead of per call.
+ * <p>
+ * The process is started with the worker command and receives its jobs on stdin, one line per job
+ * holding the headless arguments (everything but {@code --headless} and {@code --project}) separated
+ * by tabs. For each job it prints a line {@value #JOB_DONE} on success or {@value #JOB_FAILED}
+ * followed by a message on failure; all other output is forwarded to the log. Closing stdin asks the
+ * process to exit.
+ * <p>
+ * The process is started on the first job, stopped after it was idle for the idle timeout, and started
+ * again if it died, e.g. because a job crashed it. A job that does not finish within the job timeout,
+ * e.g. because ilastik waits for input, kills the process as well.
+ */
+public class IlastikWorker implements Closeable {
+    static final String JOB_DONE = "ilastik4ij-job-done";
+    static final String JOB_FAILED = "ilastik4ij-job-failed";
+
+    private static final Map<List<Object>, List<IlastikWorker>> WORKERS = new HashMap<>();
+    // schedules the stops of idle workers; it never takes the lock of a worker, which a running job holds
+    private static final ScheduledExecutorService IDLE_TIMER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ilastik-worker-idle-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // stops idle workers, waiting for their lock if a job just started
+    private static final ExecutorService IDLE_STOPPER = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "ilastik-worker-idle-stop");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // kills workers whose job timed out
+    private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ilastik-worker-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final List<String> command;
+    private final Map<String, String> environment;
+    private final long idleTimeoutMillis;
+    private final long jobTimeoutMillis;
+    private final LogService logService;
+    private Process process;
+    private BufferedWriter jobs;
+    private BufferedReader replies;
+    private ScheduledFuture<?> idleStop;
+    private volatile int generation;
+    // guarded by WORKERS
+    private boolean leased;
+
+    /**
+     * @param jobTimeoutMillis time after which a job is considered hung and the process is killed,
+     *                         or 0 to wait for jobs as long as they take
+     */
+    public IlastikWorker(List<String> command, Map<String, String> environment, long idleTimeoutMillis,
+                         long jobTimeoutMillis, LogService logService) {
+        this.command = command;
+        this.environment = environment;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.jobTimeoutMillis = jobTimeoutMillis;
+        this.logService = logService;
+    }
+
+    /**
+     * Leases a worker for the command and environment, i.e. for a project file and configuration. Idle workers
+     * started by earlier callers are reused; concurrent callers get a process each.
+     * Give the worker back with {@link #release(IlastikWorker)} once the job is done.
+     */
+    public static IlastikWorker acquire(List<String> command, Map<String, String> environment,
+                                        long idleTimeoutMillis, long jobTimeoutMillis, LogService logService) {
+        synchronized (WORKERS) {
+            List<IlastikWorker> workers = WORKERS.computeIfAbsent(getKey(command, environment),
+                    key -> new ArrayList<>());
+            for (IlastikWorker worker : workers) {
+                if (!worker.leased) {
+                    worker.leased = true;
+                    return worker;
+                }
+            }
+            IlastikWorker worker = new IlastikWorker(command, environment, idleTimeoutMillis, jobTimeoutMillis, logService);
+            worker.leased = true;
+            workers.add(worker);
+            return worker;
+        }
+    }
+
+    public static void release(IlastikWorker worker) {
+        synchronized (WORKERS) {
+            worker.leased = false;
+        }
+    }
+
+    /**
+     * Runs a job on the process, starting it first if needed, and waits for it to finish.
+     *
+     * @throws IOException if the job failed or the process died while running it
+     */
+    public synchronized void runJob(List<String> args) throws IOException {
+        cancelIdleStop();
+        if (process == null || !process.isAlive()) {
+            start();
+        }
+
+        logService.info("Running job on ilastik worker: " + args);
+        // the reply is read without a timeout, so a hung process is killed to end the read
+        final Process running = process;
+        final AtomicBoolean timedOut = new AtomicBoolean();
+        final ScheduledFuture<?> watchdog = jobTimeoutMillis <= 0 ? null : WATCHDOG.schedule(() -> {
+            timedOut.set(true);
+            running.destroyForcibly();
+        }, jobTimeoutMillis, TimeUnit.MILLISECONDS);
+        try {
+            jobs.write(String.join("\t", args));
+            jobs.newLine();
+            jobs.flush();
+
+            String line;
+            while ((line = replies.readLine()) != null) {
+                if (line.equals(JOB_DONE)) {
+                    logService.info("ilastik worker job finished successfully!");
+                    return;
+                } else if (line.startsWith(JOB_FAILED)) {
+                    throw new IOException("ilastik worker job failed:" + line.substring(JOB_FAILED.length()));
+                }
+                logService.info(line);
+            }
+            // end of output without a reply, the job crashed the process or was killed
+            stop();
+            throw new IOException("ilastik worker exited while running a job");
+        } catch (IOException e) {
+            if (process != null && !process.isAlive()) {
+                stop();
+            }
+            if (timedOut.get()) {
+                logService.error("ilastik worker job timed out, the worker will be restarted for the next job");
+                throw new IOException(String.format("ilastik worker job did not finish within %.1f s", jobTimeoutMillis / 1000.0), e);
+            }
+            logService.error("ilastik worker crashed, it will be restarted for the next job");
+            throw e;
+        } finally {
+            if (watchdog != null) {
+                watchdog.cancel(false);
+            }
+            if (process != null) {
+                int scheduled = ++generation;
+                idleStop = IDLE_TIMER.schedule(() -> {
+                    // a stop of an earlier generation is dropped without waiting for the lock
+                    if (scheduled == generation) {
+                        IDLE_STOPPER.execute(() -> stopIdle(scheduled));
+                    }
+                }, idleTimeoutMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * @return true if the process is currently running
+     */
+    public synchronized boolean isRunning() {
+        return process != null && process.isAlive();
+    }
+
+    /**
+     * Stops the process; it is started again by the next job.
+     */
+    @Override
+    public synchronized void close() {
+        cancelIdleStop();
+        stop();
+        unregister();
+    }
+
+    private void start() throws IOException {
+        logService.info("Starting ilastik worker: " + command);
+        ProcessBuilder pb = new ProcessBuilder(command);
+        pb.environment().putAll(environment);
+        process = pb.start();
+        jobs = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8));
+        replies = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+        IOUtils.redirectOutputToLogService(process.getErrorStream(), logService, true);
+    }
+
+    private void cancelIdleStop() {
+        // invalidates a stop that already fired but still waits for the lock
+        generation++;
+        if (idleStop != null) {
+            idleStop.cancel(false);
+            idleStop = null;
+        }
+    }
+
+    private synchronized void stopIdle(int scheduled) {
+        if (scheduled == generation && process != null) {
+            logService.info("Stopping idle ilastik worker");
+            idleStop = null;
+            stop();
+            unregister();
+        }
+    }
+
+    /**
+     * Forgets a stopped worker that is not leased, so that workers of old executables or options do not pile up.
+     */
+    private void unregister() {
+        synchronized (WORKERS) {
+            List<Object> key = getKey(command, environment);
+            List<IlastikWorker> workers = WORKERS.get(key);
+            if (workers != null && !leased && workers.remove(this) && workers.isEmpty()) {
+                WORKERS.remove(key);
+            }
+        }
+    }
+
+    private static List<Object> getKey(List<String> command, Map<String, String> environment) {
+        return Arrays.asList(command, environment);
+    }
+
+    private void stop() {
+        if (process == null) {
+            return;
+        }
+        try {
+            // closing stdin lets the worker exit on its own
+            jobs.close();
+            if (!process.waitFor(10, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+            }
+        } catch (IOException e) {
+            process.destroyForcibly();
+        } catch (InterruptedException e) {
+            process.destroyForcibly();
+            Thread.currentThread().interrupt();
+        }
+        process = null;
+        jobs = null;
+        replies = null;
+    }
+}
@@ -25,22 +25,36 @@ public class ObjectClassification extends AbstractIlastikExecutor {
         return executeIlastik(rawInputImg, probOrSegInputImg, secondInputType);
     }
 
+    /**
+     * Classifies the objects of all images with a single run of ilastik.
+     *
+     * @param probOrSegInputImgs probabilities or segmentation for every raw input image
+     * @return object predictions in the order of the input images
+     */
+    public <T extends NativeType<T>> List<ImgPlus<T>> classifyObjects(List<? extends ImgPlus<? extends RealType<?>>> rawInputImgs,
+                                                                      List<? extends ImgPlus<? extends RealType<?>>> probOrSegInputImgs,
+                                                                      PixelPredictionType secondInputType) throws IOException {
+        return executeIlastik(rawInputImgs, probOrSegInputImgs, secondInputType);
+    }
+
     @Override
-    protected List<String> buildCommandLine(Map<String, String> tempFiles, PixelPredictionType secondInputType) {
+    protected List<String> buildBatchCommandLine(Map<String, List<String>> tempFiles, PixelPredictionType secondInputType) {
         List<String> commandLine = new ArrayList<>();
         commandLine.add(executableFilePath.getAbsolutePath());
         commandLine.add("--headless");
         commandLine.add("--project=" + projectFileName.getAbsolutePath());
-        commandLine.add("--output_filename_format=" + tempFiles.get(outputTempFile));
+        commandLine.add("--output_filename_format=" + tempFiles.get(outputTempFile).get(0));
         commandLine.add("--output_format=hdf5");
         commandLine.add("--output_axis_order=tzyxc");
-        commandLine.add("--raw_data=" + tempFiles.get(rawInputTempFile));
+        commandLine.add("--raw_data");
+        commandLine.addAll(tempFiles.get(rawInputTempFile));
 
         if (secondInputType == PixelPredictionType.Segmentation) {
-            commandLine.add("--segmentation_image=" + tempFiles.get(secondInputTempFile));
+            commandLine.add("--segmentation_image");
         } else {
-            commandLine.add("--prediction_maps=" + tempFiles.get(secondInputTempFile));
+            commandLine.add("--prediction_maps");
         }
+        commandLine.addAll(tempFiles.get(secondInputTempFile));
 
         return commandLine;
     }
@@ -1,42 +1,224 @@
 package org.ilastik.ilastik4ij.executors;
 
 import net.imagej.ImgPlus;
+import net.imagej.axis.Axes;
+import net.imagej.axis.AxisType;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.cache.img.DiskCachedCellImgFactory;
+import net.imglib2.cache.img.DiskCachedCellImgOptions;
+import net.imglib2.img.Img;
+import net.imglib2.img.ImgView;
+import net.imglib2.img.cell.CellGrid;
 import net.imglib2.type.NativeType;
 import net.imglib2.type.numeric.RealType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+import org.ilastik.ilastik4ij.hdf5.PrimitiveBlocks;
 import org.scijava.app.StatusService;
 import org.scijava.log.LogService;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 public class PixelClassification extends AbstractIlastikExecutor {
+    // axis order of the predictions, as read by Hdf5DataSetReader
+    private static final List<AxisType> OUTPUT_AXES = Arrays.asList(Axes.X, Axes.Y, Axes.CHANNEL, Axes.Z, Axes.TIME);
+    private static final int DEFAULT_BLOCKS_PER_RUN = 8;
+
+    private int blocksPerRun = DEFAULT_BLOCKS_PER_RUN;
 
     public PixelClassification(File executableFilePath, File projectFileName, LogService logService,
                                StatusService statusService, int numThreads, int maxRamMb) {
         super(executableFilePath, projectFileName, logService, statusService, numThreads, maxRamMb);
     }
 
+    /**
+     * @param blocksPerRun number of blocks of {@link #classifyPixelsTiled} classified by one run of ilastik,
+     *                     defaults to {@value #DEFAULT_BLOCKS_PER_RUN}; their inputs and predictions are all
+     *                     in memory at the same time, so lower it for large blocks or many output channels
+     */
+    public void setBlocksPerRun(int blocksPerRun) {
+        if (blocksPerRun < 1) {
+            throw new IllegalArgumentException("At least one block per run is required: " + blocksPerRun);
+        }
+        this.blocksPerRun = blocksPerRun;
+    }
+
     public <T extends NativeType<T>> ImgPlus<T> classifyPixels(ImgPlus<? extends RealType<?>> rawInputImg,
                                                                PixelPredictionType pixelPredictionType) throws IOException {
         return executeIlastik(rawInputImg, null, pixelPredictionType);
     }
 
+    /**
+     * Classifies all images with a single run of ilastik.
+     *
+     * @return predictions in the order of the input images
+     */
+    public <T extends NativeType<T>> List<ImgPlus<T>> classifyPixels(List<? extends ImgPlus<? extends RealType<?>>> rawInputImgs,
+                                                                     PixelPredictionType pixelPredictionType) throws IOException {
+        return executeIlastik(rawInputImgs, null, pixelPredictionType);
+    }
+
+    /**
+     * Classifies an image block by block, for images that do not fit into memory. Every block is extended
+     * by a halo on all sides and only its core is kept, so that filters near block borders see the same
+     * neighborhood as in a single run. The halo should therefore cover the largest feature scale of the
+     * project, about 3.5 sigma. Blocks are classified in batches of {@link #setBlocksPerRun blocksPerRun}
+     * per run of ilastik, or on the worker if one is set, so that starting ilastik and loading the project
+     * is not paid for every block. With a process pool, every slot of the pool classifies a batch at the
+     * same time.
+     * <p>
+     * Blocks span {@code blockSize} pixels along X, Y and Z, a single time point, and all channels. The
+     * result is stitched into a disk-cached image in XYCZT order. Peak memory is therefore bounded by the
+     * batches in flight, not by the image: {@code blocksPerRun} times the number of processes of the pool
+     * halo-extended input blocks, and as many of their predictions, plus the cached cells of the result.
+     */
+    public <T extends NativeType<T>> ImgPlus<T> classifyPixelsTiled(ImgPlus<? extends RealType<?>> rawInputImg,
+                                                                    PixelPredictionType pixelPredictionType,
+                                                                    int blockSize, int halo) throws IOException {
+        if (blockSize < 1 || halo < 0) {
+            throw new IllegalArgumentException(String.format("Invalid block size %d or halo %d", blockSize, halo));
+        }
+        final long[] inputDims = Intervals.dimensionsAsLongArray(rawInputImg);
+        final int[] blockDims = new int[inputDims.length];
+        for (int d = 0; d < inputDims.length; d++) {
+            AxisType axis = rawInputImg.axis(d).type();
+            if (isSpatial(axis)) {
+                blockDims[d] = (int) Math.min(blockSize, inputDims[d]);
+            } else if (axis == Axes.TIME) {
+                blockDims[d] = 1;
+            } else {
+                blockDims[d] = Math.toIntExact(inputDims[d]);
+            }
+        }
+        final CellGrid blocks = new CellGrid(inputDims, blockDims);
+        final long numBlocks = Intervals.numElements(blocks.getGridDimensions());
+        logService.info(String.format("Classifying %d blocks of shape %s with a halo of %d", numBlocks,
+                Arrays.toString(blockDims), halo));
+        final Optional<StatusService> status = Optional.ofNullable(statusService);
+
+        Img<T> outputImg = null;
+        ImgPlus<T> prediction = null;
+        // every process of the pool classifies a batch at the same time
+        final int blocksPerBatch = blocksPerRun * getNumProcesses();
+        for (long first = 0; first < numBlocks; first += blocksPerBatch) {
+            final long firstBlock = first;
+            status.ifPresent(s -> s.showStatus((int) firstBlock, (int) numBlocks, "Tiled pixel classification..."));
+
+            final List<Interval> cores = new ArrayList<>();
+            final List<Interval> extendedBlocks = new ArrayList<>();
+            final List<ImgPlus<? extends RealType<?>>> inputs = new ArrayList<>();
+            for (long i = first; i < Math.min(numBlocks, first + blocksPerBatch); i++) {
+                final long[] coreMin = new long[inputDims.length];
+                final int[] coreDims = new int[inputDims.length];
+                blocks.getCellDimensions(i, coreMin, coreDims);
+                final long[] haloMin = new long[inputDims.length];
+                final long[] haloMax = new long[inputDims.length];
+                for (int d = 0; d < inputDims.length; d++) {
+                    final long extension = isSpatial(rawInputImg.axis(d).type()) ? halo : 0;
+                    haloMin[d] = Math.max(0, coreMin[d] - extension);
+                    haloMax[d] = Math.min(inputDims[d] - 1, coreMin[d] + coreDims[d] - 1 + extension);
+                }
+                final FinalInterval extended = new FinalInterval(haloMin, haloMax);
+                cores.add(FinalInterval.createMinSize(coreMin, Arrays.stream(coreDims).asLongStream().toArray()));
+                extendedBlocks.add(extended);
+                inputs.add(cropInput(rawInputImg, extended));
+            }
+
+            final List<ImgPlus<T>> predictions = executeIlastik(inputs, null, pixelPredictionType);
+            for (int i = 0; i < predictions.size(); i++) {
+                prediction = predictions.get(i);
+                if (outputImg == null) {
+                    outputImg = createTiledOutput(rawInputImg, prediction, blockDims);
+                }
+                copyCore(rawInputImg, prediction, cores.get(i), extendedBlocks.get(i), outputImg);
+            }
+        }
+        status.ifPresent(s -> s.showStatus("Finished tiled pixel classification."));
+
+        final ImgPlus<T> result = new ImgPlus<>(outputImg, rawInputImg.getName(), OUTPUT_AXES.toArray(new AxisType[0]));
+        result.initializeColorTables((int) (outputImg.dimension(2) * outputImg.dimension(3) * outputImg.dimension(4)));
+        result.setValidBits(prediction.getValidBits());
+        return result;
+    }
+
+    /**
+     * Copies the core of the prediction of an extended block, which is in XYCZT order, into the output.
+     */
+    private static <T extends NativeType<T>> void copyCore(ImgPlus<? extends RealType<?>> rawInputImg, ImgPlus<T> prediction,
+                                                           Interval core, Interval extended, Img<T> outputImg) {
+        final long[] srcMin = new long[OUTPUT_AXES.size()];
+        final long[] dstMin = new long[OUTPUT_AXES.size()];
+        final long[] size = new long[OUTPUT_AXES.size()];
+        for (int k = 0; k < OUTPUT_AXES.size(); k++) {
+            final int d = rawInputImg.dimensionIndex(OUTPUT_AXES.get(k));
+            if (OUTPUT_AXES.get(k) == Axes.CHANNEL || d < 0) {
+                size[k] = prediction.dimension(k);
+            } else {
+                srcMin[k] = core.min(d) - extended.min(d);
+                dstMin[k] = core.min(d);
+                size[k] = core.dimension(d);
+            }
+        }
+        PrimitiveBlocks.copyBlock(prediction.getImg(), FinalInterval.createMinSize(srcMin, size), outputImg, dstMin);
+    }
+
+    private static boolean isSpatial(AxisType axis) {
+        return axis == Axes.X || axis == Axes.Y || axis == Axes.Z;
+    }
+
+    /**
+     * @return the interval of the image as an image of its own, with the same axes
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static ImgPlus<? extends RealType<?>> cropInput(ImgPlus<? extends RealType<?>> img, Interval interval) {
+        final ImgPlus raw = img;
+        final Img crop = ImgView.wrap(Views.zeroMin(Views.interval(raw, interval)), raw.factory());
+        final AxisType[] axes = new AxisType[img.numDimensions()];
+        for (int d = 0; d < axes.length; d++) {
+            axes[d] = img.axis(d).type();
+        }
+        return new ImgPlus<>(crop, img.getName(), axes);
+    }
+
+    private static <T extends NativeType<T>> Img<T> createTiledOutput(ImgPlus<? extends RealType<?>> rawInputImg,
+                                                                      ImgPlus<T> prediction, int[] blockDims) {
+        final long[] dims = new long[OUTPUT_AXES.size()];
+        final int[] cellDims = new int[OUTPUT_AXES.size()];
+        for (int k = 0; k < OUTPUT_AXES.size(); k++) {
+            final int d = rawInputImg.dimensionIndex(OUTPUT_AXES.get(k));
+            if (OUTPUT_AXES.get(k) == Axes.CHANNEL || d < 0) {
+                dims[k] = prediction.dimension(k);
+                cellDims[k] = (int) prediction.dimension(k);
+            } else {
+                dims[k] = rawInputImg.dimension(d);
+                cellDims[k] = blockDims[d];
+            }
+        }
+        // cells are written to a temporary directory when evicted from memory
+        return new DiskCachedCellImgFactory<>(prediction.firstElement().createVariable(), DiskCachedCellImgOptions.options()
+                .cellDimensions(cellDims)).create(dims);
+    }
+
     @Override
-    protected List<String> buildCommandLine(Map<String, String> tempFiles, PixelPredictionType pixelPredictionType) {
+    protected List<String> buildBatchCommandLine(Map<String, List<String>> tempFiles, PixelPredictionType pixelPredictionType) {
         List<String> commandLine = new ArrayList<>();
         commandLine.add(executableFilePath.getAbsolutePath());
         commandLine.add("--headless");
         commandLine.add("--project=" + projectFileName.getAbsolutePath());
-        commandLine.add("--output_filename_format=" + tempFiles.get(outputTempFile));
+        commandLine.add("--output_filename_format=" + tempFiles.get(outputTempFile).get(0));
         commandLine.add("--output_format=hdf5");
         commandLine.add("--output_axis_order=tzyxc");
         if (pixelPredictionType == PixelPredictionType.Segmentation) {
             commandLine.add("--export_source=Simple Segmentation");
         }
-        commandLine.add(tempFiles.get(rawInputTempFile));
+        commandLine.addAll(tempFiles.get(rawInputTempFile));
 
         return commandLine;
     }
@@ -0,0 +1,322 @@
+package org.ilastik.ilastik4ij.executors;
+
+import net.imagej.ImgPlus;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.type.numeric.IntegerType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.GenericByteType;
+import net.imglib2.type.numeric.integer.GenericIntType;
+import net.imglib2.type.numeric.integer.GenericLongType;
+import net.imglib2.type.numeric.integer.GenericShortType;
+import net.imglib2.type.numeric.real.DoubleType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+import org.ilastik.ilastik4ij.hdf5.PrimitiveBlocks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/**
+ * On-disk store of ilastik outputs, addressed by a hash of everything that determines them: the input
+ * pixels, the content of the project file, the workflow and the output type.
+ * <p>
+ * Outputs are kept as the HDF5 files written by ilastik. The store is bounded in size; when it grows
+ * beyond the limit, the least recently used outputs are removed. Several Fiji instances, e.g. of the
+ * users of a shared server, can use the same directory.
+ */
+public class PredictionCache {
+    private static final String SUFFIX = ".h5";
+    private static final int HASH_BUFFER_BYTES = 1 << 16;
+    private static final int HASH_BLOCK_PIXELS = 1 << 20;
+
+    private static final int MAX_PROJECT_HASHES = 16;
+
+    // hash of the latest version of every project, since projects can be hundreds of MB
+    private static final Map<String, Map.Entry<String, String>> PROJECT_HASHES =
+            new LinkedHashMap<String, Map.Entry<String, String>>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Map.Entry<String, String>> eldest) {
+                    return size() > MAX_PROJECT_HASHES;
+                }
+            };
+
+    private final File directory;
+    private final long maxBytes;
+
+    public PredictionCache(File directory, long maxBytes) {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IllegalArgumentException("Cannot create prediction cache directory: " + directory);
+        }
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return the stored output for the key, or null if there is none
+     */
+    public synchronized File get(String key) {
+        File file = getFile(key);
+        if (!file.isFile()) {
+            return null;
+        }
+        // the modification time orders the outputs for eviction
+        file.setLastModified(System.currentTimeMillis());
+        return file;
+    }
+
+    /**
+     * Stores a copy of the output under the key, then evicts the least recently used outputs beyond the size limit.
+     */
+    public synchronized void put(String key, File output) throws IOException {
+        if (output.length() > maxBytes) {
+            return;
+        }
+        File file = getFile(key);
+        // other instances sharing the directory must never see a partial file
+        File partial = File.createTempFile(key, ".partial", directory);
+        try {
+            Files.copy(output.toPath(), partial.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            Files.move(partial.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            partial.delete();
+        }
+        evict(file);
+    }
+
+    /**
+     * @return key of an output, combining the hashes of everything it depends on
+     */
+    public static String key(String... parts) {
+        MessageDigest digest = newDigest();
+        for (String part : parts) {
+            digest.update(part.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * @return hash of the pixel values, the dimensions and the axes of the image, independent of its container
+     */
+    public static String hashImage(ImgPlus<? extends RealType<?>> img) {
+        MessageDigest digest = newDigest();
+        ByteBuffer buffer = ByteBuffer.allocate(HASH_BUFFER_BYTES);
+        for (int d = 0; d < img.numDimensions(); d++) {
+            buffer.putLong(img.dimension(d));
+            putString(buffer, img.axis(d).type().getLabel());
+        }
+        putString(buffer, img.firstElement().getClass().getName());
+        digest.update(buffer.array(), 0, buffer.position());
+
+        // pixels are hashed in their native width, in blocks copied from the storage arrays in flat iteration order
+        final Object pixels = createPixelArray(img.firstElement(), (int) Math.min(Intervals.numElements(img), HASH_BLOCK_PIXELS));
+        if (pixels == null) {
+            hashPixelValues(img, digest, buffer);
+        } else {
+            forEachFlatBlock(img, HASH_BLOCK_PIXELS, block -> {
+                PrimitiveBlocks.copyFromImg(img.getImg(), block, pixels, PrimitiveBlocks.flatStrides(block));
+                hashArray(pixels, (int) Intervals.numElements(block), digest, buffer);
+            });
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * @return an array of the storage type of the pixel, or null if its storage does not hold one value per pixel
+     */
+    private static Object createPixelArray(Object pixel, int length) {
+        if (pixel instanceof GenericByteType) {
+            return new byte[length];
+        } else if (pixel instanceof GenericShortType) {
+            return new short[length];
+        } else if (pixel instanceof GenericIntType) {
+            return new int[length];
+        } else if (pixel instanceof GenericLongType) {
+            return new long[length];
+        } else if (pixel instanceof FloatType) {
+            return new float[length];
+        } else if (pixel instanceof DoubleType) {
+            return new double[length];
+        }
+        return null;
+    }
+
+    /**
+     * Visits the image in blocks of at most {@code maxPixels} pixels that follow each other in flat iteration order:
+     * whole lines, planes, etc. as far as they fit, else parts of them.
+     */
+    private static void forEachFlatBlock(Interval img, long maxPixels, Consumer<Interval> consumer) {
+        final int n = img.numDimensions();
+        // the block spans dimensions 0..k-1 completely and a range of dimension k
+        int k = 0;
+        long inner = 1;
+        while (k < n && inner * img.dimension(k) <= maxPixels) {
+            inner *= img.dimension(k);
+            k++;
+        }
+        if (k == n) {
+            consumer.accept(img);
+            return;
+        }
+        final long step = Math.max(1, maxPixels / inner);
+        final long[] min = Intervals.minAsLongArray(img);
+        final long[] max = Intervals.maxAsLongArray(img);
+        final long[] pos = min.clone();
+        while (true) {
+            final long[] blockMin = min.clone();
+            final long[] blockMax = max.clone();
+            for (int d = k; d < n; d++) {
+                blockMin[d] = pos[d];
+                blockMax[d] = d == k ? Math.min(pos[d] + step - 1, max[d]) : pos[d];
+            }
+            consumer.accept(new FinalInterval(blockMin, blockMax));
+
+            int d = k;
+            pos[d] += step;
+            while (pos[d] > max[d]) {
+                pos[d] = min[d];
+                if (++d == n) {
+                    return;
+                }
+                pos[d]++;
+            }
+        }
+    }
+
+    private static void hashArray(Object array, int length, MessageDigest digest, ByteBuffer buffer) {
+        if (array instanceof byte[]) {
+            digest.update((byte[]) array, 0, length);
+            return;
+        }
+        final int bytesPerPixel = array instanceof short[] ? Short.BYTES
+                : array instanceof int[] || array instanceof float[] ? Integer.BYTES : Long.BYTES;
+        final int pixelsPerBuffer = buffer.capacity() / bytesPerPixel;
+        for (int offset = 0; offset < length; offset += pixelsPerBuffer) {
+            final int count = Math.min(pixelsPerBuffer, length - offset);
+            buffer.clear();
+            if (array instanceof short[]) {
+                buffer.asShortBuffer().put((short[]) array, offset, count);
+            } else if (array instanceof int[]) {
+                buffer.asIntBuffer().put((int[]) array, offset, count);
+            } else if (array instanceof long[]) {
+                buffer.asLongBuffer().put((long[]) array, offset, count);
+            } else if (array instanceof float[]) {
+                buffer.asFloatBuffer().put((float[]) array, offset, count);
+            } else {
+                buffer.asDoubleBuffer().put((double[]) array, offset, count);
+            }
+            digest.update(buffer.array(), 0, count * bytesPerPixel);
+        }
+    }
+
+    /**
+     * Hashes pixels of other types through a cursor, 64 bits per pixel.
+     */
+    private static void hashPixelValues(ImgPlus<? extends RealType<?>> img, MessageDigest digest, ByteBuffer buffer) {
+        buffer.clear();
+        // doubles cannot tell all 64-bit integers apart
+        final boolean integer = img.firstElement() instanceof IntegerType;
+        for (RealType<?> pixel : Views.flatIterable(img)) {
+            if (buffer.remaining() < Long.BYTES) {
+                digest.update(buffer.array(), 0, buffer.position());
+                buffer.clear();
+            }
+            buffer.putLong(integer ? ((IntegerType<?>) pixel).getIntegerLong() : Double.doubleToRawLongBits(pixel.getRealDouble()));
+        }
+        digest.update(buffer.array(), 0, buffer.position());
+    }
+
+    /**
+     * @return hash of the content of the project file
+     */
+    public static String hashProject(File project) throws IOException {
+        String path = project.getAbsolutePath();
+        String version = getFileVersion(project);
+        synchronized (PROJECT_HASHES) {
+            Map.Entry<String, String> latest = PROJECT_HASHES.get(path);
+            String hash = latest != null && latest.getKey().equals(version) ? latest.getValue() : null;
+            if (hash == null) {
+                MessageDigest digest = newDigest();
+                byte[] buffer = new byte[HASH_BUFFER_BYTES];
+                try (InputStream in = Files.newInputStream(project.toPath())) {
+                    int read;
+                    while ((read = in.read(buffer)) > 0) {
+                        digest.update(buffer, 0, read);
+                    }
+                }
+                hash = toHex(digest.digest());
+                PROJECT_HASHES.put(path, new AbstractMap.SimpleImmutableEntry<>(version, hash));
+            }
+            return hash;
+        }
+    }
+
+    /**
+     * @return path, modification time and size of the file, which change when e.g. an executable is updated
+     */
+    public static String getFileVersion(File file) {
+        return String.format("%s@%d:%d", file.getAbsolutePath(), file.lastModified(), file.length());
+    }
+
+    private File getFile(String key) {
+        return new File(directory, key + SUFFIX);
+    }
+
+    private void evict(File keep) {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+        if (files == null) {
+            return;
+        }
+        // most recently used first
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified).reversed());
+        long total = keep.length();
+        for (File file : files) {
+            if (Objects.equals(file, keep)) {
+                continue;
+            }
+            total += file.length();
+            if (total > maxBytes) {
+                file.delete();
+            }
+        }
+    }
+
+    private static void putString(ByteBuffer buffer, String value) {
+        // length prefixed, so that consecutive strings cannot be split differently
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder result = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            result.append(String.format("%02x", b));
+        }
+        return result.toString();
+    }
+}
@@ -23,23 +23,37 @@ public class Tracking extends AbstractIlastikExecutor {
         return executeIlastik(rawInputImg, secondInputImg, pixelPredictionType);
     }
 
+    /**
+     * Tracks the objects of all images with a single run of ilastik.
+     *
+     * @param secondInputImgs probabilities or segmentation for every raw input image
+     * @return tracking results in the order of the input images
+     */
+    public <T extends NativeType<T>> List<ImgPlus<T>> trackObjects(List<? extends ImgPlus<? extends RealType<?>>> rawInputImgs,
+                                                                   List<? extends ImgPlus<? extends RealType<?>>> secondInputImgs,
+                                                                   PixelPredictionType pixelPredictionType) throws IOException {
+        return executeIlastik(rawInputImgs, secondInputImgs, pixelPredictionType);
+    }
+
     @Override
-    protected List<String> buildCommandLine(Map<String, String> tempFiles, PixelPredictionType pixelPredictionType) {
+    protected List<String> buildBatchCommandLine(Map<String, List<String>> tempFiles, PixelPredictionType pixelPredictionType) {
         List<String> commandLine = new ArrayList<>();
         commandLine.add(executableFilePath.getAbsolutePath());
         commandLine.add("--headless");
         commandLine.add("--project=" + projectFileName.getAbsolutePath());
-        commandLine.add("--output_filename_format=" + tempFiles.get(outputTempFile));
+        commandLine.add("--output_filename_format=" + tempFiles.get(outputTempFile).get(0));
         commandLine.add("--output_format=hdf5");
         commandLine.add("--output_axis_order=tzyxc");
         commandLine.add("--export_source=Tracking-Result");
-        commandLine.add("--raw_data=" + tempFiles.get(rawInputTempFile));
+        commandLine.add("--raw_data");
+        commandLine.addAll(tempFiles.get(rawInputTempFile));
 
         if (pixelPredictionType == PixelPredictionType.Segmentation) {
-            commandLine.add("--segmentation_image=" + tempFiles.get(secondInputTempFile));
+            commandLine.add("--segmentation_image");
         } else {
-            commandLine.add("--prediction_maps=" + tempFiles.get(secondInputTempFile));
+            commandLine.add("--prediction_maps");
         }
+        commandLine.addAll(tempFiles.get(secondInputTempFile));
 
         return commandLine;
     }
@@ -0,0 +1,96 @@
+package org.ilastik.ilastik4ij.hdf5;
+
+import ch.systemsx.cisd.hdf5.HDF5Factory;
+import ch.systemsx.cisd.hdf5.IHDF5Writer;
+import net.imagej.ImgPlus;
+import net.imagej.axis.Axes;
+import net.imglib2.type.Type;
+import org.scijava.log.LogService;
+
+import java.io.Closeable;
+import java.util.Arrays;
+
+/**
+ * Writes a time-lapse to an HDF5 dataset frame by frame, e.g. while it is being acquired.
+ * <p>
+ * The dataset has the same TZYXC layout as the one of {@link Hdf5DataSetWriter}, but it is created
+ * without frames and grows along T with every {@link #appendFrame(ImgPlus)}. Only the current
+ * frame needs to be in memory. Every frame is flushed to the file once written, so the frames
+ * written so far survive a crash; readers should still open the file only after {@link #close()},
+ * since HDF5 (as used by JHDF5) does not support reading a file while it is being written.
+ */
+public class Hdf5AppendableWriter<T extends Type<T>> implements Closeable {
+    private final String filename;
+    private final String dataset;
+    private final int compressionLevel;
+    private final LogService logService;
+    private final IHDF5Writer writer;
+    private int[] chunkShape;
+    private long[] frameDims;
+    private Class<T> pixelClass;
+    private long numFrames;
+
+    public Hdf5AppendableWriter(String filename, String dataset, int compressionLevel, LogService logService) {
+        this.filename = filename;
+        this.dataset = dataset;
+        this.compressionLevel = compressionLevel;
+        this.logService = logService;
+        this.writer = HDF5Factory.open(filename);
+    }
+
+    /**
+     * @param chunkShape chunk shape of the dataset in TZYXC order, see {@link Hdf5DataSetWriter#setChunkShape(int[])};
+     *                   only has an effect before the first frame is appended
+     */
+    public void setChunkShape(int[] chunkShape) {
+        this.chunkShape = chunkShape;
+    }
+
+    /**
+     * Appends a frame at the end of the T axis. The first frame determines the ZYXC extents and the
+     * pixel type of the dataset, every later frame must match them.
+     *
+     * @param frame image without a time axis, or with a time axis of extent 1
+     * @throws IllegalArgumentException if the frame does not match the previous frames
+     */
+    public synchronized void appendFrame(ImgPlus<T> frame) {
+        int timeIndex = frame.dimensionIndex(Axes.TIME);
+        if (timeIndex >= 0 && frame.dimension(timeIndex) != 1) {
+            throw new IllegalArgumentException("Frames must not have more than one time point");
+        }
+
+        Hdf5DataSetWriter<T> frameWriter = new Hdf5DataSetWriter<>(frame, filename, dataset, compressionLevel,
+                logService, null);
+        frameWriter.setChunkShape(chunkShape);
+        if (numFrames == 0) {
+            frameDims = frameWriter.getDatasetDimensions();
+            pixelClass = frameWriter.getPixelClass();
+            frameWriter.createAppendableDataset(writer);
+            logService.info(String.format("Appending frames of shape %s to '%s' in %s", Arrays.toString(frameDims),
+                    dataset, filename));
+        } else if (!Arrays.equals(frameDims, frameWriter.getDatasetDimensions())) {
+            throw new IllegalArgumentException(String.format("Frame of shape %s does not match the previous frames of shape %s",
+                    Arrays.toString(frameWriter.getDatasetDimensions()), Arrays.toString(frameDims)));
+        } else if (frameWriter.getPixelClass() != pixelClass) {
+            throw new IllegalArgumentException(String.format("Frame of type %s does not match the previous frames of type %s",
+                    frameWriter.getPixelClass().getSimpleName(), pixelClass.getSimpleName()));
+        }
+
+        frameWriter.writeFrame(writer, numFrames);
+        writer.file().flush();
+        numFrames++;
+    }
+
+    /**
+     * @return number of frames written so far
+     */
+    public synchronized long getNumFrames() {
+        return numFrames;
+    }
+
+    @Override
+    public synchronized void close() {
+        writer.close();
+        logService.info(String.format("Wrote %d frames to '%s' in %s", numFrames, dataset, filename));
+    }
+}
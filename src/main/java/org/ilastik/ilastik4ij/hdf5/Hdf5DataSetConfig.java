@@ -1,13 +1,22 @@
 package org.ilastik.ilastik4ij.hdf5;
 
 import ch.systemsx.cisd.hdf5.HDF5DataSetInformation;
+import ch.systemsx.cisd.hdf5.HDF5StorageLayout;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
 import org.ilastik.ilastik4ij.util.Hdf5Utils;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 
 public class Hdf5DataSetConfig {
+    // chunks larger than this are not read in one piece
+    private static final long MAX_BLOCK_ELEMENTS = 1L << 26;
+
     public final int numFrames;
     public final int dimX;
     public final int dimY;
@@ -17,6 +26,9 @@ public class Hdf5DataSetConfig {
     public final int bitdepth;
     private final Map<Character, Integer> axisIndices = new HashMap<>();
     private final Map<Character, Integer> axisExtents = new HashMap<>();
+    private final int[] chunkSizes;
+    private final long[] datasetDims;
+    private final boolean contiguous;
 
 
     public Hdf5DataSetConfig(HDF5DataSetInformation dsInfo, String axesorder) {
@@ -41,6 +53,12 @@ public class Hdf5DataSetConfig {
 
         // datatype
         typeInfo = Hdf5Utils.getTypeInfo(dsInfo);
+
+        // null for contiguous or compact datasets
+        chunkSizes = dsInfo.tryGetChunkSizes();
+        datasetDims = dsInfo.getDimensions();
+        // contiguous datasets cannot have filters, their data is stored raw in a single extent
+        contiguous = dsInfo.getStorageLayout() == HDF5StorageLayout.CONTIGUOUS;
     }
 
     /**
@@ -98,5 +116,212 @@ public class Hdf5DataSetConfig {
 
         return result;
     }
-}
 
+    /**
+     * @return extents of the dataset in the XYCZT axis order of the imported image
+     */
+    public long[] getImageDimensions() {
+        return new long[]{dimX, dimY, numChannels, dimZ, numFrames};
+    }
+
+    /**
+     * @param imageMin min corner of a block in XYCZT image coordinates
+     * @return offset of the block in the axis order of the dataset
+     */
+    public long[] getDatasetOffset(long[] imageMin) {
+        long[] result = new long[axisIndices.size()];
+        for (Map.Entry<Character, Integer> entry : axisIndices.entrySet()) {
+            int imageAxis = Hdf5Utils.IMAGE_AXES.indexOf(entry.getKey());
+            result[entry.getValue()] = imageAxis >= 0 ? imageMin[imageAxis] : 0;
+        }
+        return result;
+    }
+
+    /**
+     * @param imageDims size of a block in XYCZT image coordinates
+     * @return extent of the block in the axis order of the dataset
+     */
+    public int[] getDatasetExtent(long[] imageDims) {
+        int[] result = new int[axisIndices.size()];
+        for (Map.Entry<Character, Integer> entry : axisIndices.entrySet()) {
+            int imageAxis = Hdf5Utils.IMAGE_AXES.indexOf(entry.getKey());
+            result[entry.getValue()] = imageAxis >= 0 ? Math.toIntExact(imageDims[imageAxis]) : 1;
+        }
+        return result;
+    }
+
+    /**
+     * Strides of a flat (C-ordered) array holding a dataset block of the given extent,
+     * expressed in XYCZT image axis order. Axes missing from the dataset get a stride of 0.
+     */
+    public long[] getImageStrides(int[] datasetExtent) {
+        long[] datasetStrides = new long[datasetExtent.length];
+        long stride = 1;
+        for (int index = datasetExtent.length - 1; index >= 0; index--) {
+            datasetStrides[index] = stride;
+            stride *= datasetExtent[index];
+        }
+
+        long[] result = new long[Hdf5Utils.IMAGE_AXES.length()];
+        for (int imageAxis = 0; imageAxis < result.length; imageAxis++) {
+            Integer index = axisIndices.get(Hdf5Utils.IMAGE_AXES.charAt(imageAxis));
+            result[imageAxis] = index != null ? datasetStrides[index] : 0;
+        }
+        return result;
+    }
+
+    /**
+     * @return true if the dataset is stored unfiltered in one contiguous extent of the file
+     */
+    public boolean isContiguous() {
+        return contiguous;
+    }
+
+    /**
+     * @return true if the flat (C-ordered) layout of the dataset is the flat XYCZT layout of the
+     * imported image, i.e. the dataset can be used as image storage without reordering
+     */
+    public boolean hasImageMemoryLayout() {
+        long[] dims = getImageDimensions();
+        long[] strides = getImageStrides(getDatasetExtent(dims));
+        long expected = 1;
+        for (int d = 0; d < dims.length; d++) {
+            if (dims[d] > 1 && strides[d] != expected)
+                return false;
+            expected *= dims[d];
+        }
+        return true;
+    }
+
+    /**
+     * Block shape, in XYCZT order, in which the dataset is read. For chunked datasets this is
+     * the HDF5 chunk shape, so that every chunk is decompressed exactly once. Contiguous datasets
+     * are read in slabs that are contiguous in the file. Otherwise, or if chunks are too large to
+     * be read in one piece, whole XY slices are read.
+     */
+    public int[] getImageBlockSize() {
+        if (contiguous) {
+            return getContiguousSlabSize();
+        }
+        if (chunkSizes != null && chunkSizes.length == axisIndices.size()) {
+            int[] result = {1, 1, 1, 1, 1};
+            long numElements = 1;
+            for (Map.Entry<Character, Integer> entry : axisIndices.entrySet()) {
+                int imageAxis = Hdf5Utils.IMAGE_AXES.indexOf(entry.getKey());
+                if (imageAxis >= 0) {
+                    result[imageAxis] = Math.min(chunkSizes[entry.getValue()], axisExtents.get(entry.getKey()));
+                    numElements *= result[imageAxis];
+                }
+            }
+            if (numElements <= MAX_BLOCK_ELEMENTS) {
+                return result;
+            }
+        }
+        return getImageSliceSize();
+    }
+
+    /**
+     * @return size of a single XY slice, in XYCZT order
+     */
+    public int[] getImageSliceSize() {
+        return new int[]{dimX, dimY, 1, 1, 1};
+    }
+
+    private int[] getContiguousSlabSize() {
+        // take the fastest varying dataset axes completely, as long as the slab stays small enough
+        int[] slab = new int[datasetDims.length];
+        long remaining = MAX_BLOCK_ELEMENTS;
+        for (int index = datasetDims.length - 1; index >= 0; index--) {
+            if (datasetDims[index] <= remaining) {
+                slab[index] = (int) datasetDims[index];
+                remaining /= Math.max(1, datasetDims[index]);
+            } else {
+                slab[index] = (int) Math.max(1, remaining);
+                remaining = 1;
+            }
+        }
+
+        int[] result = {1, 1, 1, 1, 1};
+        for (Map.Entry<Character, Integer> entry : axisIndices.entrySet()) {
+            int imageAxis = Hdf5Utils.IMAGE_AXES.indexOf(entry.getKey());
+            if (imageAxis >= 0) {
+                result[imageAxis] = Math.max(1, slab[entry.getValue()]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Tiles the XYCZT image into a grid of blocks of the given size. Blocks at the upper
+     * borders are cropped to the image.
+     */
+    public List<Interval> getImageBlocks(int[] blockSize) {
+        return getImageBlocks(new FinalInterval(getImageDimensions()), blockSize);
+    }
+
+    /**
+     * Returns the blocks of the grid of the given size that overlap {@code region},
+     * cropped to the region. Reading them touches only the part of the dataset inside the region.
+     */
+    public List<Interval> getImageBlocks(Interval region, int[] blockSize) {
+        long[] steps = new long[region.numDimensions()];
+        Arrays.fill(steps, 1);
+        return getImageBlocks(region, steps, blockSize);
+    }
+
+    /**
+     * Like {@link #getImageBlocks(Interval, int[])}, but only for the pixels sampled every
+     * {@code steps[d]} positions from the min of the region. Blocks are shrunk to their first and
+     * last sampled position, and blocks without any sampled position are skipped entirely.
+     */
+    public List<Interval> getImageBlocks(Interval region, long[] steps, int[] blockSize) {
+        int n = region.numDimensions();
+        long[] gridMin = new long[n];
+        long[] gridMax = new long[n];
+        for (int d = 0; d < n; d++) {
+            gridMin[d] = region.min(d) / blockSize[d];
+            gridMax[d] = region.max(d) / blockSize[d];
+        }
+
+        List<Interval> result = new ArrayList<>();
+        long[] gridPos = gridMin.clone();
+        long[] min = new long[n];
+        long[] max = new long[n];
+        while (true) {
+            boolean sampled = true;
+            for (int d = 0; d < n; d++) {
+                long blockMin = Math.max(gridPos[d] * blockSize[d], region.min(d));
+                long blockMax = Math.min((gridPos[d] + 1) * blockSize[d] - 1, region.max(d));
+                // first and last sampled position inside the block
+                min[d] = region.min(d) + (blockMin - region.min(d) + steps[d] - 1) / steps[d] * steps[d];
+                max[d] = region.min(d) + (blockMax - region.min(d)) / steps[d] * steps[d];
+                sampled &= min[d] <= max[d];
+            }
+            if (sampled) {
+                result.add(new FinalInterval(min.clone(), max.clone()));
+            }
+
+            int d = 0;
+            for (; d < n; d++) {
+                if (++gridPos[d] <= gridMax[d]) break;
+                gridPos[d] = gridMin[d];
+            }
+            if (d == n) return result;
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if the XYCZT interval does not lie within the dataset
+     */
+    public void checkImageInterval(Interval interval) {
+        long[] dims = getImageDimensions();
+        if (interval.numDimensions() != dims.length)
+            throw new IllegalArgumentException("Interval must have 5 dimensions in XYCZT order");
+
+        for (int d = 0; d < dims.length; d++) {
+            if (interval.min(d) < 0 || interval.max(d) >= dims[d] || interval.min(d) > interval.max(d))
+                throw new IllegalArgumentException(String.format("Interval [%d, %d] of axis '%s' does not fit the dataset extent %d",
+                        interval.min(d), interval.max(d), Hdf5Utils.IMAGE_AXES.charAt(d), dims[d]));
+        }
+    }
+}
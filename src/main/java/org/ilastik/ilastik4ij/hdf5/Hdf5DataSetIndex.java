@@ -0,0 +1,139 @@
+package org.ilastik.ilastik4ij.hdf5;
+
+import ch.systemsx.cisd.hdf5.HDF5DataSetInformation;
+import ch.systemsx.cisd.hdf5.HDF5Factory;
+import ch.systemsx.cisd.hdf5.HDF5LinkInformation;
+import ch.systemsx.cisd.hdf5.IHDF5Reader;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Index of the datasets in an HDF5 file.
+ * <p>
+ * Groups are only listed, dataset information (shape and type) is read on demand and kept
+ * for later requests. Indices are cached per file and reused for as long as the file's
+ * modification time and size stay the same.
+ */
+public class Hdf5DataSetIndex {
+    private static final int MAX_CACHED_FILES = 16;
+
+    private static final Map<Key, Hdf5DataSetIndex> CACHE = new LinkedHashMap<Key, Hdf5DataSetIndex>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Hdf5DataSetIndex> eldest) {
+            return size() > MAX_CACHED_FILES;
+        }
+    };
+
+    private final String path;
+    private List<String> dataSets;
+    private final Map<String, HDF5DataSetInformation> dataSetInfos = new HashMap<>();
+
+    private Hdf5DataSetIndex(String path) {
+        this.path = path;
+    }
+
+    /**
+     * @return the index of the given file, cached if the file did not change since it was last indexed
+     */
+    public static Hdf5DataSetIndex forFile(String path) {
+        File file = new File(path).getAbsoluteFile();
+        Key key = new Key(file.getPath(), file.lastModified(), file.length());
+        synchronized (CACHE) {
+            // entries of older versions of the file are evicted by the LRU order
+            return CACHE.computeIfAbsent(key, k -> new Hdf5DataSetIndex(k.path));
+        }
+    }
+
+    /**
+     * @return absolute paths of all datasets in the file, in the order of a depth-first walk of the groups
+     */
+    public synchronized List<String> getDataSets() {
+        if (dataSets == null) {
+            List<String> result = new ArrayList<>();
+            try (IHDF5Reader reader = HDF5Factory.openForReading(path)) {
+                collectDataSets(reader, "/", result);
+            }
+            dataSets = Collections.unmodifiableList(result);
+        }
+        return dataSets;
+    }
+
+    /**
+     * @return shape and type of the dataset, read from the file on the first request only
+     */
+    public HDF5DataSetInformation getDataSetInformation(String dataSet) {
+        return getDataSetInformation(Collections.singletonList(dataSet)).get(dataSet);
+    }
+
+    /**
+     * Like {@link #getDataSetInformation(String)}, opening the file at most once for all datasets.
+     */
+    public synchronized Map<String, HDF5DataSetInformation> getDataSetInformation(Collection<String> dataSets) {
+        Map<String, HDF5DataSetInformation> result = new LinkedHashMap<>();
+        IHDF5Reader reader = null;
+        try {
+            for (String dataSet : dataSets) {
+                HDF5DataSetInformation info = dataSetInfos.get(dataSet);
+                if (info == null) {
+                    if (reader == null) {
+                        reader = HDF5Factory.openForReading(path);
+                    }
+                    info = reader.object().getDataSetInformation(dataSet);
+                    dataSetInfos.put(dataSet, info);
+                }
+                result.put(dataSet, info);
+            }
+        } finally {
+            if (reader != null) {
+                reader.close();
+            }
+        }
+        return result;
+    }
+
+    private static void collectDataSets(IHDF5Reader reader, String group, List<String> result) {
+        // link targets are not needed to tell datasets from groups, so do not resolve them
+        for (HDF5LinkInformation info : reader.object().getGroupMemberInformation(group, false)) {
+            switch (info.getType()) {
+                case DATASET:
+                    result.add(info.getPath());
+                    break;
+                case GROUP:
+                    collectDataSets(reader, info.getPath(), result);
+                    break;
+            }
+        }
+    }
+
+    private static final class Key {
+        private final String path;
+        private final long lastModified;
+        private final long length;
+
+        Key(String path, long lastModified, long length) {
+            this.path = path;
+            this.lastModified = lastModified;
+            this.length = length;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return path.equals(other.path) && lastModified == other.lastModified && length == other.length;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, lastModified, length);
+        }
+    }
+}
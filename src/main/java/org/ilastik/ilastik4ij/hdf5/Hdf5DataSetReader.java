@@ -1,43 +1,83 @@
 package org.ilastik.ilastik4ij.hdf5;
 
+import ch.systemsx.cisd.base.mdarray.MDAbstractArray;
+import ch.systemsx.cisd.base.mdarray.MDByteArray;
+import ch.systemsx.cisd.base.mdarray.MDDoubleArray;
+import ch.systemsx.cisd.base.mdarray.MDFloatArray;
+import ch.systemsx.cisd.base.mdarray.MDIntArray;
+import ch.systemsx.cisd.base.mdarray.MDLongArray;
+import ch.systemsx.cisd.base.mdarray.MDShortArray;
 import ch.systemsx.cisd.hdf5.HDF5DataSetInformation;
 import ch.systemsx.cisd.hdf5.HDF5Factory;
 import ch.systemsx.cisd.hdf5.IHDF5Reader;
 import net.imagej.ImgPlus;
 import net.imagej.axis.Axes;
 import net.imagej.axis.AxisType;
-import net.imglib2.RandomAccess;
+import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.cache.img.CachedCellImg;
+import net.imglib2.cache.img.DiskCachedCellImgFactory;
+import net.imglib2.cache.img.DiskCachedCellImgOptions;
+import net.imglib2.cache.img.ReadOnlyCachedCellImgFactory;
+import net.imglib2.cache.img.ReadOnlyCachedCellImgOptions;
 import net.imglib2.img.Img;
-import net.imglib2.img.ImgFactory;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.img.array.ArrayImgs;
 import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.img.planar.PlanarImgFactory;
 import net.imglib2.type.NativeType;
-import net.imglib2.type.numeric.integer.UnsignedByteType;
-import net.imglib2.type.numeric.integer.UnsignedIntType;
-import net.imglib2.type.numeric.integer.UnsignedLongType;
-import net.imglib2.type.numeric.integer.UnsignedShortType;
-import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Intervals;
+import net.imglib2.util.Util;
+import net.imglib2.view.Views;
 import org.ilastik.ilastik4ij.util.Hdf5Utils;
 import org.scijava.app.StatusService;
 import org.scijava.log.LogService;
 
 import javax.swing.*;
+import java.io.File;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 
 
 public class Hdf5DataSetReader<T extends NativeType<T>> {
-    private static final List<AxisType> AXES = Arrays.asList(Axes.X, Axes.Y, Axes.CHANNEL, Axes.Z, Axes.TIME);
+    private static final long MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+    private static final long SMALL_IMAGE_BYTES = 256L << 20;
+    private static final double DEFAULT_MAX_MEMORY_FRACTION = 0.5;
+
+    // properties of the imported images, which let the workflow wrappers pass the file to ilastik as is
+    public static final String FILE_PROPERTY = "ilastik4ij.hdf5.file";
+    public static final String DATASET_PROPERTY = "ilastik4ij.hdf5.dataset";
+    public static final String AXES_PROPERTY = "ilastik4ij.hdf5.axes";
+    public static final String LAST_MODIFIED_PROPERTY = "ilastik4ij.hdf5.lastModified";
+
+    /**
+     * Image containers the reader stores eagerly read datasets in.
+     */
+    public enum Container {
+        ARRAY,
+        PLANAR,
+        CELL,
+        DISK_CACHED
+    }
 
     private final String filename;
     private final String dataset;
     private final String axesorder;
     private final LogService logService;
     private final Optional<StatusService> statusService;
+    private int numThreads = Runtime.getRuntime().availableProcessors();
+    private double maxMemoryFraction = DEFAULT_MAX_MEMORY_FRACTION;
 
     public Hdf5DataSetReader(String filename, String dataset, String axesorder, LogService logService, StatusService statusService) {
         this.filename = filename;
@@ -47,109 +87,591 @@ public class Hdf5DataSetReader<T extends NativeType<T>> {
         this.statusService = Optional.ofNullable(statusService);
     }
 
+    /**
+     * @param numThreads number of worker threads used by {@link #read()}, defaults to the number of processors
+     */
+    public void setNumThreads(int numThreads) {
+        this.numThreads = numThreads;
+    }
+
+    /**
+     * @param maxMemoryFraction fraction of the maximum heap size above which an image is stored in a
+     *                          disk-cached cell image instead of in memory, and which the cells cached by
+     *                          {@link #readLazy()} may take up, defaults to 0.5
+     */
+    public void setMaxMemoryFraction(double maxMemoryFraction) {
+        this.maxMemoryFraction = maxMemoryFraction;
+    }
+
+    /**
+     * @return dimensions of the dataset in the XYCZT order of the imported image
+     */
+    public long[] getImageDimensions() {
+        try (IHDF5Reader reader = HDF5Factory.openForReading(filename)) {
+            return new Hdf5DataSetConfig(reader.object().getDataSetInformation(dataset), axesorder).getImageDimensions();
+        }
+    }
+
     public ImgPlus<T> read() {
+        return read(null, null);
+    }
+
+    /**
+     * Reads a sub-volume of the dataset. Only the HDF5 blocks overlapping the interval are read,
+     * so I/O scales with the size of the interval rather than the size of the dataset.
+     *
+     * @param interval region to read, in XYCZT order of the imported image, or null to read everything
+     * @return image of the size of the interval, with its min at the origin
+     */
+    public ImgPlus<T> read(Interval interval) {
+        return read(interval, null);
+    }
+
+    /**
+     * Reads every {@code steps[d]}-th pixel of the dataset, e.g. {4, 4, 1, 4, 1} for a quick
+     * preview of a large volume. XY slices and chunks without any sampled pixel are not read at all,
+     * and the output image only holds the sampled pixels.
+     *
+     * @param steps sampling step per XYCZT axis
+     */
+    public ImgPlus<T> readDownsampled(long[] steps) {
+        return read(null, steps);
+    }
+
+    /**
+     * Reads every {@code steps[d]}-th pixel of a sub-volume of the dataset, starting at the min of the interval.
+     * Only the blocks read from the file that contain no sampled pixel are skipped; the others are read and,
+     * for chunked datasets, decompressed completely. Steps therefore always save memory, but reading time only
+     * where they exceed the chunk extent, e.g. along Z for datasets chunked slice by slice.
+     *
+     * @param interval region to read, in XYCZT order of the imported image, or null to read everything
+     * @param steps    sampling step per XYCZT axis, or null to read every pixel
+     * @return image holding the sampled pixels, with its min at the origin
+     */
+    public ImgPlus<T> read(Interval interval, long[] steps) {
+        final Hdf5DataSetConfig dsConfig;
         try (IHDF5Reader reader = HDF5Factory.openForReading(filename)) {
-            HDF5DataSetInformation dsInfo = reader.object().getDataSetInformation(dataset);
-            Hdf5DataSetConfig dsConfig = new Hdf5DataSetConfig(dsInfo, axesorder);
-            logService.info(String.format("Found dataset '%s' of type '%s'", dataset, dsConfig.typeInfo));
+            dsConfig = readConfig(reader);
+        }
 
-            // construct output image
-            final long[] dims = {dsConfig.dimX, dsConfig.dimY, dsConfig.numChannels, dsConfig.dimZ, dsConfig.numFrames};
+        interval = checkInterval(dsConfig, interval);
+        steps = checkSteps(steps);
+        if (dsConfig.isContiguous() && isFullResolution(interval, steps, dsConfig)) {
+            final Img<T> img = readContiguous(dsConfig);
+            if (img != null) {
+                return wrapImg(img, dsConfig, null);
+            }
+        }
 
-            String strDims = Arrays.stream(dims)
-                    .mapToObj(String::valueOf)
-                    .collect(Collectors.joining(", "));
+        // construct output image
+        final int n = interval.numDimensions();
+        final long[] dims = getSampledDimensions(interval, steps);
+        final int[] blockSize = dsConfig.getImageBlockSize();
+        final int[] cellDims = new int[n];
+        for (int d = 0; d < n; d++) {
+            cellDims[d] = (int) Math.max(1, blockSize[d] / steps[d]);
+        }
+        final T type = getNativeType(dsConfig, dims);
 
-            logService.info(String.format("Constructing output image of shape (%s). Axis order: 'XYCZT'", strDims));
+        final Container container = selectContainer(dims, dsConfig.bitdepth / 8, cellDims,
+                Runtime.getRuntime().maxMemory(), maxMemoryFraction);
+        logService.info("Storing image in container: " + container);
+        final Img<T> img = createImg(container, type, dims, cellDims);
+
+        final List<Interval> blocks = dsConfig.getImageBlocks(interval, steps, blockSize);
+        final long[] offset = new long[n];
+        interval.min(offset);
+        readBlocks(dsConfig, blocks, offset, steps, img);
+        return wrapImg(img, dsConfig, steps);
+    }
 
-            final T type = Hdf5Utils.getNativeType(dsConfig.typeInfo);
+    /**
+     * Reads the whole dataset into an existing image instead of allocating a new one, e.g. to reuse
+     * one buffer for a series of datasets of the same shape.
+     *
+     * @param target image with the XYCZT dimensions and the pixel type of the dataset
+     */
+    public void readInto(RandomAccessibleInterval<T> target) {
+        readInto(null, null, target);
+    }
+
+    /**
+     * Like {@link #read(Interval, long[])}, but writes the sampled pixels into {@code target}.
+     * Array, planar and cell images are filled straight from the blocks read from the file,
+     * any other image or view through a cursor. Reading allocates no image-sized memory.
+     *
+     * @param target image with the dimensions of the sampled interval and the pixel type of the dataset
+     * @throws IllegalArgumentException if the dimensions or the pixel type of {@code target} do not match
+     */
+    public void readInto(Interval interval, long[] steps, RandomAccessibleInterval<T> target) {
+        final Hdf5DataSetConfig dsConfig;
+        try (IHDF5Reader reader = HDF5Factory.openForReading(filename)) {
+            dsConfig = readConfig(reader);
+        }
+        interval = checkInterval(dsConfig, interval);
+        steps = checkSteps(steps);
 
-            if (type == null) {
-                throw new IllegalArgumentException("Unsupported data type: " + dsConfig.typeInfo);
+        final long[] dims = getSampledDimensions(interval, steps);
+        if (!Arrays.equals(dims, Intervals.dimensionsAsLongArray(target))) {
+            throw new IllegalArgumentException(String.format("Target image of shape %s does not fit the %s pixels read",
+                    Arrays.toString(Intervals.dimensionsAsLongArray(target)), Arrays.toString(dims)));
+        }
+        final T type = getNativeType(dsConfig, dims);
+        if (Util.getTypeFromInterval(target).getClass() != type.getClass()) {
+            throw new IllegalArgumentException(String.format("Target image of type %s cannot hold dataset of type %s",
+                    Util.getTypeFromInterval(target).getClass().getSimpleName(), dsConfig.typeInfo));
+        }
+
+        final long[] offset = new long[interval.numDimensions()];
+        interval.min(offset);
+        final List<Interval> blocks = dsConfig.getImageBlocks(interval, steps, dsConfig.getImageBlockSize());
+        readBlocks(dsConfig, blocks, offset, steps, Views.isZeroMin(target) ? target : Views.zeroMin(target));
+    }
+
+    /**
+     * Like {@link #readLazy(long)}, caching as many cells as fit into the fraction of the maximum heap size
+     * set with {@link #setMaxMemoryFraction(double)}.
+     */
+    public ImgPlus<T> readLazy() {
+        final Hdf5DataSetConfig dsConfig = readConfig();
+        return readLazy(dsConfig, getMaxCachedCells(getLazyCellDims(dsConfig), dsConfig.bitdepth / 8,
+                Runtime.getRuntime().maxMemory(), maxMemoryFraction));
+    }
+
+    /**
+     * Opens the dataset as a virtual image without reading any pixels up front.
+     * Cells are loaded from the HDF5 file when they are first accessed and kept in
+     * a bounded LRU cache, so only the parts of the dataset that are viewed are read.
+     *
+     * @param maxCachedCells maximum number of cells kept in memory
+     */
+    public ImgPlus<T> readLazy(long maxCachedCells) {
+        return readLazy(readConfig(), maxCachedCells);
+    }
+
+    /**
+     * @return number of cells of the given size that fit into {@code maxMemoryFraction} of {@code maxMemory}, at least one
+     */
+    public static long getMaxCachedCells(int[] cellDims, int bytesPerPixel, long maxMemory, double maxMemoryFraction) {
+        final double cellBytes = (double) Arrays.stream(cellDims).asLongStream().reduce(1, (a, b) -> a * b) * bytesPerPixel;
+        return Math.max(1, (long) (maxMemoryFraction * maxMemory / cellBytes));
+    }
+
+    private Hdf5DataSetConfig readConfig() {
+        try (IHDF5Reader reader = HDF5Factory.openForReading(filename)) {
+            return readConfig(reader);
+        }
+    }
+
+    private static int[] getLazyCellDims(Hdf5DataSetConfig dsConfig) {
+        // one cell per HDF5 chunk (or XY slice), matching the blocks read from the file
+        return dsConfig.isContiguous() ? dsConfig.getImageSliceSize() : dsConfig.getImageBlockSize();
+    }
+
+    private ImgPlus<T> readLazy(Hdf5DataSetConfig dsConfig, long maxCachedCells) {
+        final long[] dims = dsConfig.getImageDimensions();
+        final T type = getNativeType(dsConfig, dims);
+
+        final int[] cellDims = getLazyCellDims(dsConfig);
+        final ReadOnlyCachedCellImgOptions options = ReadOnlyCachedCellImgOptions.options()
+                .cellDimensions(cellDims)
+                .cacheType(ReadOnlyCachedCellImgOptions.CacheType.BOUNDED)
+                .maxCacheSize(maxCachedCells);
+
+        // the file is opened per cell, so the virtual image does not keep an HDF5 handle alive
+        final CachedCellImg<T, ?> img = new ReadOnlyCachedCellImgFactory(options).create(dims, type, cell -> {
+            try (IHDF5Reader reader = HDF5Factory.openForReading(filename)) {
+                readBlock(reader, dsConfig, cell, new long[]{0, 0, 0, 0, 0}, new long[]{1, 1, 1, 1, 1}, cell, null);
             }
-            // used default cell dimensions
-            final ImgFactory<T> imgFactory = new CellImgFactory<>(type);
-            final Img<T> img = imgFactory.create(dims);
-
-            RandomAccess rai = img.randomAccess();
-            final int[] extents = dsConfig.getXYSliceExtent();
-
-            final int totalCheckpoints = dsConfig.numFrames * dsConfig.numChannels * dsConfig.dimZ;
-            AtomicInteger checkpoint = new AtomicInteger();
-            SwingUtilities.invokeLater(() -> statusService.ifPresent(s -> s.showStatus(checkpoint.get(), totalCheckpoints, "Importing HDF5...")));
-
-            for (int frame = 0; frame < dsConfig.numFrames; ++frame) {
-                rai.setPosition(frame, AXES.indexOf(Axes.TIME));
-                for (int lev = 0; lev < dsConfig.dimZ; ++lev) {
-                    rai.setPosition(lev, AXES.indexOf(Axes.Z));
-                    for (int c = 0; c < dsConfig.numChannels; ++c) {
-                        rai.setPosition(c, AXES.indexOf(Axes.CHANNEL));
-
-                        long[] offset = dsConfig.getSliceOffset(frame, lev, c);
-
-                        Object[] flatArray = getFlatArray(reader, this.dataset, dsConfig.typeInfo, extents, offset);
-
-                        for (int x = 0; x < dsConfig.dimX; x++) {
-                            rai.setPosition(x, AXES.indexOf(Axes.X));
-                            for (int y = 0; y < dsConfig.dimY; y++) {
-                                rai.setPosition(y, AXES.indexOf(Axes.Y));
-
-                                int destIndex;
-                                if (dsConfig.isXYOrder()) {
-                                    destIndex = x * dsConfig.dimY + y;
-                                } else {
-                                    destIndex = y * dsConfig.dimX + x;
-                                }
-
-                                if (type instanceof FloatType) {
-                                    FloatType raiType = (FloatType) rai.get();
-                                    double d = (double) flatArray[destIndex];
-                                    float f = (float) d;
-                                    raiType.set(f);
-                                } else if (type instanceof UnsignedByteType) {
-                                    UnsignedByteType raiType = (UnsignedByteType) rai.get();
-                                    raiType.set((int) flatArray[destIndex]);
-                                } else if (type instanceof UnsignedShortType) {
-                                    UnsignedShortType raiType = (UnsignedShortType) rai.get();
-                                    raiType.set((int) flatArray[destIndex]);
-                                } else if (type instanceof UnsignedIntType) {
-                                    UnsignedIntType raiType = (UnsignedIntType) rai.get();
-                                    raiType.set((int) flatArray[destIndex]);
-                                } else if (type instanceof UnsignedLongType) {
-                                    UnsignedLongType raiType = (UnsignedLongType) rai.get();
-                                    raiType.set((long) flatArray[destIndex]);
-                                }
-                            }
-                        }
-                        SwingUtilities.invokeLater(() -> statusService.ifPresent(s -> s.showProgress(checkpoint.incrementAndGet(), totalCheckpoints)));
-                    }
+        });
+        logService.info(String.format("Opened dataset '%s' lazily, caching at most %d cells", dataset, maxCachedCells));
+        return wrapImg(img, dsConfig, null);
+    }
+
+    /**
+     * Picks the image container for an image of the given size:
+     * <ul>
+     * <li>{@link Container#DISK_CACHED} if the image would take more than {@code maxMemoryFraction} of the heap,</li>
+     * <li>{@link Container#ARRAY} for small images,</li>
+     * <li>{@link Container#PLANAR} if the blocks read from the file are whole XY planes,</li>
+     * <li>{@link Container#CELL} with cells matching the blocks read from the file otherwise.</li>
+     * </ul>
+     */
+    public static Container selectContainer(long[] dims, int bytesPerPixel, int[] blockSize, long maxMemory,
+                                            double maxMemoryFraction) {
+        final long numElements = Arrays.stream(dims).reduce(1, (a, b) -> a * b);
+        final double numBytes = (double) numElements * bytesPerPixel;
+        if (numBytes > maxMemoryFraction * maxMemory) {
+            return Container.DISK_CACHED;
+        }
+        if (numElements <= MAX_ARRAY_LENGTH && numBytes <= SMALL_IMAGE_BYTES) {
+            return Container.ARRAY;
+        }
+
+        boolean planeBlocks = blockSize[0] == dims[0] && blockSize[1] == dims[1];
+        for (int d = 2; d < dims.length; d++) {
+            planeBlocks &= blockSize[d] == 1;
+        }
+        if (planeBlocks && dims[0] * dims[1] <= MAX_ARRAY_LENGTH) {
+            return Container.PLANAR;
+        }
+        return Container.CELL;
+    }
+
+    private static <T extends NativeType<T>> Img<T> createImg(Container container, T type, long[] dims, int[] cellDims) {
+        switch (container) {
+            case ARRAY:
+                return new ArrayImgFactory<>(type).create(dims);
+            case PLANAR:
+                return new PlanarImgFactory<>(type).create(dims);
+            case DISK_CACHED:
+                // cells are written to a temporary directory when evicted from memory
+                return new DiskCachedCellImgFactory<>(type, DiskCachedCellImgOptions.options()
+                        .cellDimensions(cellDims)).create(dims);
+            default:
+                // cells match the blocks read from the file, so each block is a single copy into its own cell
+                return new CellImgFactory<>(type, cellDims).create(dims);
+        }
+    }
+
+    private static Interval checkInterval(Hdf5DataSetConfig dsConfig, Interval interval) {
+        if (interval == null) {
+            interval = new FinalInterval(dsConfig.getImageDimensions());
+        }
+        dsConfig.checkImageInterval(interval);
+        return interval;
+    }
+
+    private static long[] checkSteps(long[] steps) {
+        if (steps == null) {
+            steps = new long[Hdf5Utils.IMAGE_AXES.length()];
+            Arrays.fill(steps, 1);
+        } else if (steps.length != Hdf5Utils.IMAGE_AXES.length() || Arrays.stream(steps).anyMatch(step -> step < 1)) {
+            throw new IllegalArgumentException("Steps must be positive, one per XYCZT axis: " + Arrays.toString(steps));
+        }
+        return steps;
+    }
+
+    private static long[] getSampledDimensions(Interval interval, long[] steps) {
+        final long[] dims = new long[interval.numDimensions()];
+        for (int d = 0; d < dims.length; d++) {
+            dims[d] = (interval.dimension(d) + steps[d] - 1) / steps[d];
+        }
+        return dims;
+    }
+
+    private static boolean isFullResolution(Interval interval, long[] steps, Hdf5DataSetConfig dsConfig) {
+        long[] dims = dsConfig.getImageDimensions();
+        for (int d = 0; d < dims.length; d++) {
+            if (interval.min(d) != 0 || interval.dimension(d) != dims[d] || steps[d] != 1)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Fast path for contiguous datasets whose flat layout already is the XYCZT layout of the image:
+     * the whole dataset is fetched with a single sequential read, and the returned primitive array
+     * is used as the storage of an ArrayImg as is, without any further copy.
+     *
+     * @return the image, or null if the dataset does not qualify
+     */
+    private Img<T> readContiguous(Hdf5DataSetConfig dsConfig) {
+        final long[] dims = dsConfig.getImageDimensions();
+        final long numElements = Arrays.stream(dims).reduce(1, (a, b) -> a * b);
+        if (!dsConfig.hasImageMemoryLayout() || numElements > MAX_ARRAY_LENGTH
+                || (double) numElements * dsConfig.bitdepth / 8 > maxMemoryFraction * Runtime.getRuntime().maxMemory()) {
+            return null;
+        }
+
+        logService.info("Reading contiguous dataset in a single pass");
+        SwingUtilities.invokeLater(() -> statusService.ifPresent(s -> s.showStatus("Importing HDF5...")));
+        final Object flatArray;
+        try (IHDF5Reader reader = HDF5Factory.openForReading(filename)) {
+            flatArray = getFlatArray(reader, dataset, dsConfig.typeInfo, dsConfig.getDatasetExtent(dims),
+                    dsConfig.getDatasetOffset(new long[dims.length]));
+        }
+        SwingUtilities.invokeLater(() -> statusService.ifPresent(s -> s.showStatus("Finished Importing HDF5.")));
+        return wrapArray(flatArray, dsConfig.typeInfo, dims);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Img<T> wrapArray(Object flatArray, String type, long[] dims) {
+        final Img<?> img;
+        switch (type) {
+            case "float32":
+                img = ArrayImgs.floats((float[]) flatArray, dims);
+                break;
+            case "uint8":
+                img = ArrayImgs.unsignedBytes((byte[]) flatArray, dims);
+                break;
+            case "uint16":
+                img = ArrayImgs.unsignedShorts((short[]) flatArray, dims);
+                break;
+            case "uint32":
+                img = ArrayImgs.unsignedInts((int[]) flatArray, dims);
+                break;
+            case "uint64":
+                img = ArrayImgs.unsignedLongs((long[]) flatArray, dims);
+                break;
+            case "int8":
+                img = ArrayImgs.bytes((byte[]) flatArray, dims);
+                break;
+            case "int16":
+                img = ArrayImgs.shorts((short[]) flatArray, dims);
+                break;
+            case "int32":
+                img = ArrayImgs.ints((int[]) flatArray, dims);
+                break;
+            case "int64":
+                img = ArrayImgs.longs((long[]) flatArray, dims);
+                break;
+            case "float64":
+                img = ArrayImgs.doubles((double[]) flatArray, dims);
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported data type: " + type);
+        }
+        return (Img<T>) img;
+    }
+
+    /**
+     * Reads the given blocks into {@code img}, spreading them over up to {@code numThreads} workers.
+     * Every worker opens its own reader and the blocks are disjoint, so workers never write to the
+     * same pixels. Note that the HDF5 library itself serializes native calls; what runs in parallel
+     * is everything on the Java side of a read, overlapping it with the next block's decompression.
+     */
+    private void readBlocks(Hdf5DataSetConfig dsConfig, List<Interval> blocks, long[] offset, long[] steps,
+                            RandomAccessibleInterval<T> img) {
+        final int totalCheckpoints = blocks.size();
+        AtomicInteger checkpoint = new AtomicInteger();
+        SwingUtilities.invokeLater(() -> statusService.ifPresent(s -> s.showStatus(checkpoint.get(), totalCheckpoints, "Importing HDF5...")));
+
+        // every worker reuses one buffer, large enough for any of the blocks
+        final long[] maxBlockSize = new long[offset.length];
+        for (Interval block : blocks) {
+            for (int d = 0; d < maxBlockSize.length; d++) {
+                maxBlockSize[d] = Math.max(maxBlockSize[d], block.dimension(d));
+            }
+        }
+        final int[] bufferExtents = dsConfig.getDatasetExtent(maxBlockSize);
+
+        final AtomicInteger nextBlock = new AtomicInteger();
+        final Runnable worker = () -> {
+            final MDAbstractArray<?> buffer = createBlockBuffer(dsConfig.typeInfo, bufferExtents);
+            try (IHDF5Reader reader = HDF5Factory.openForReading(filename)) {
+                for (int i = nextBlock.getAndIncrement(); i < blocks.size(); i = nextBlock.getAndIncrement()) {
+                    readBlock(reader, dsConfig, blocks.get(i), offset, steps, img, buffer);
+                    SwingUtilities.invokeLater(() -> statusService.ifPresent(s -> s.showProgress(checkpoint.incrementAndGet(), totalCheckpoints)));
+                }
+            }
+        };
+
+        final int numWorkers = Math.max(1, Math.min(numThreads, blocks.size()));
+        if (numWorkers == 1) {
+            worker.run();
+        } else {
+            logService.info(String.format("Importing %d blocks with %d threads", blocks.size(), numWorkers));
+            final ExecutorService pool = Executors.newFixedThreadPool(numWorkers);
+            try {
+                final List<Future<?>> futures = new ArrayList<>();
+                for (int i = 0; i < numWorkers; i++) {
+                    futures.add(pool.submit(worker));
                 }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("HDF5 import was interrupted", e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException("HDF5 import failed", e.getCause());
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+        SwingUtilities.invokeLater(() -> statusService.ifPresent(s -> s.showStatus("Finished Importing HDF5.")));
+    }
+
+    private Hdf5DataSetConfig readConfig(IHDF5Reader reader) {
+        HDF5DataSetInformation dsInfo = reader.object().getDataSetInformation(dataset);
+        Hdf5DataSetConfig dsConfig = new Hdf5DataSetConfig(dsInfo, axesorder);
+        logService.info(String.format("Found dataset '%s' of type '%s'", dataset, dsConfig.typeInfo));
+        return dsConfig;
+    }
+
+    private T getNativeType(Hdf5DataSetConfig dsConfig, long[] dims) {
+        String strDims = Arrays.stream(dims)
+                .mapToObj(String::valueOf)
+                .collect(Collectors.joining(", "));
+
+        logService.info(String.format("Constructing output image of shape (%s). Axis order: 'XYCZT'", strDims));
+
+        final T type = Hdf5Utils.getNativeType(dsConfig.typeInfo);
+
+        if (type == null) {
+            throw new IllegalArgumentException("Unsupported data type: " + dsConfig.typeInfo);
+        }
+        return type;
+    }
+
+    private ImgPlus<T> wrapImg(Img<T> img, Hdf5DataSetConfig dsConfig, long[] steps) {
+        AxisType[] axes = {Axes.X, Axes.Y, Axes.CHANNEL, Axes.Z, Axes.TIME};
+        ImgPlus<T> result;
+        if (steps == null) {
+            result = new ImgPlus<>(img, Paths.get(filename, dataset).toString(), axes);
+        } else {
+            // a downsampled pixel spans steps[d] pixels of the dataset
+            result = new ImgPlus<>(img, Paths.get(filename, dataset).toString(), axes,
+                    Arrays.stream(steps).asDoubleStream().toArray());
+        }
+        result.initializeColorTables((int) (img.dimension(2) * img.dimension(3) * img.dimension(4)));
+        result.setValidBits(dsConfig.bitdepth);
+        File file = new File(filename).getAbsoluteFile();
+        result.getProperties().put(FILE_PROPERTY, file.getPath());
+        result.getProperties().put(DATASET_PROPERTY, dataset);
+        result.getProperties().put(AXES_PROPERTY, axesorder);
+        result.getProperties().put(LAST_MODIFIED_PROPERTY, file.lastModified());
+        return result;
+    }
+
+    /**
+     * Reads the given XYCZT block of the dataset as a flat primitive array and copies every
+     * {@code steps[d]}-th pixel of it straight into the storage of {@code img}, without boxing
+     * individual pixels. The block must start and end on sampled positions.
+     *
+     * @param offset position of the origin of {@code img} in the dataset
+     * @param buffer array at least the size of the block to read it into, or null to allocate a new one
+     */
+    private void readBlock(IHDF5Reader reader, Hdf5DataSetConfig dsConfig, Interval block, long[] offset, long[] steps,
+                           RandomAccessibleInterval<T> img, MDAbstractArray<?> buffer) {
+        final int n = block.numDimensions();
+        final long[] min = new long[n];
+        final long[] max = new long[n];
+        final long[] size = new long[n];
+        block.min(min);
+        block.dimensions(size);
+
+        final int[] extents = dsConfig.getDatasetExtent(size);
+        final Object flatArray;
+        final long[] strides;
+        if (buffer == null) {
+            flatArray = getFlatArray(reader, this.dataset, dsConfig.typeInfo, extents, dsConfig.getDatasetOffset(min));
+            strides = dsConfig.getImageStrides(extents);
+        } else {
+            // the block is read into the corner of the buffer, so it keeps the strides of the buffer
+            readToBuffer(reader, this.dataset, dsConfig.typeInfo, buffer, extents, dsConfig.getDatasetOffset(min));
+            flatArray = buffer.getAsFlatArray();
+            strides = dsConfig.getImageStrides(buffer.dimensions());
+        }
+
+        for (int d = 0; d < n; d++) {
+            strides[d] *= steps[d];
+            min[d] = (min[d] - offset[d]) / steps[d];
+            max[d] = min[d] + (size[d] - 1) / steps[d];
+        }
+        final FinalInterval target = new FinalInterval(min, max);
+        if (PrimitiveBlocks.hasStorageArrays(img)) {
+            PrimitiveBlocks.copyToImg(flatArray, strides, target, img);
+        } else {
+            // views and other images: copy into a temporary array image, then through a cursor
+            final Img<T> tmp = new ArrayImgFactory<>(Util.getTypeFromInterval(img)).create(target);
+            PrimitiveBlocks.copyToImg(flatArray, strides, new FinalInterval(tmp), tmp);
+            final Cursor<T> src = tmp.cursor();
+            final Cursor<T> dst = Views.flatIterable(Views.interval(img, target)).cursor();
+            while (src.hasNext()) {
+                dst.next().set(src.next());
             }
-            SwingUtilities.invokeLater(() -> statusService.ifPresent(s -> s.showStatus("Finished Importing HDF5.")));
-            ImgPlus<T> result = new ImgPlus<>(img, Paths.get(filename, dataset).toString(), new AxisType[]{Axes.X, Axes.Y, Axes.CHANNEL, Axes.Z, Axes.TIME});
-            result.initializeColorTables(dsConfig.numFrames * dsConfig.numChannels * dsConfig.dimZ);
-            result.setValidBits(dsConfig.bitdepth);
-            return result;
         }
     }
 
-    private Object[] getFlatArray(IHDF5Reader reader, String dataset, String type, int[] extents, long[] offset) {
+    private static MDAbstractArray<?> createBlockBuffer(String type, int[] extents) {
+        switch (type) {
+            case "float32":
+                return new MDFloatArray(extents);
+            case "uint8":
+                return new MDByteArray(extents);
+            case "uint16":
+                return new MDShortArray(extents);
+            case "uint32":
+                return new MDIntArray(extents);
+            case "uint64":
+            case "int64":
+                return new MDLongArray(extents);
+            case "int8":
+                return new MDByteArray(extents);
+            case "int16":
+                return new MDShortArray(extents);
+            case "int32":
+                return new MDIntArray(extents);
+            case "float64":
+                return new MDDoubleArray(extents);
+            default:
+                throw new IllegalArgumentException("Unsupported data type: " + type);
+        }
+    }
+
+    private static void readToBuffer(IHDF5Reader reader, String dataset, String type, MDAbstractArray<?> buffer,
+                                     int[] extents, long[] offset) {
+        final int[] memoryOffset = new int[extents.length];
+        switch (type) {
+            case "float32":
+                reader.float32().readToMDArrayBlockWithOffset(dataset, (MDFloatArray) buffer, extents, offset, memoryOffset);
+                break;
+            case "uint8":
+                reader.uint8().readToMDArrayBlockWithOffset(dataset, (MDByteArray) buffer, extents, offset, memoryOffset);
+                break;
+            case "uint16":
+                reader.uint16().readToMDArrayBlockWithOffset(dataset, (MDShortArray) buffer, extents, offset, memoryOffset);
+                break;
+            case "uint32":
+                reader.uint32().readToMDArrayBlockWithOffset(dataset, (MDIntArray) buffer, extents, offset, memoryOffset);
+                break;
+            case "uint64":
+                reader.uint64().readToMDArrayBlockWithOffset(dataset, (MDLongArray) buffer, extents, offset, memoryOffset);
+                break;
+            case "int8":
+                reader.int8().readToMDArrayBlockWithOffset(dataset, (MDByteArray) buffer, extents, offset, memoryOffset);
+                break;
+            case "int16":
+                reader.int16().readToMDArrayBlockWithOffset(dataset, (MDShortArray) buffer, extents, offset, memoryOffset);
+                break;
+            case "int32":
+                reader.int32().readToMDArrayBlockWithOffset(dataset, (MDIntArray) buffer, extents, offset, memoryOffset);
+                break;
+            case "int64":
+                reader.int64().readToMDArrayBlockWithOffset(dataset, (MDLongArray) buffer, extents, offset, memoryOffset);
+                break;
+            case "float64":
+                reader.float64().readToMDArrayBlockWithOffset(dataset, (MDDoubleArray) buffer, extents, offset, memoryOffset);
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported data type: " + type);
+        }
+    }
+
+    private static Object getFlatArray(IHDF5Reader reader, String dataset, String type, int[] extents, long[] offset) {
         switch (type) {
             case "float32":
-                float[] floatArray = reader.float32().readMDArrayBlockWithOffset(dataset, extents, offset).getAsFlatArray();
-                return IntStream.range(0, floatArray.length).mapToDouble(i -> floatArray[i]).boxed().toArray();
+                return reader.float32().readMDArrayBlockWithOffset(dataset, extents, offset).getAsFlatArray();
             case "uint8":
-                byte[] byteArray = reader.uint8().readMDArrayBlockWithOffset(dataset, extents, offset).getAsFlatArray();
-                return IntStream.range(0, byteArray.length).map(i -> byteArray[i]).boxed().toArray();
+                return reader.uint8().readMDArrayBlockWithOffset(dataset, extents, offset).getAsFlatArray();
             case "uint16":
-                short[] shortArray = reader.uint16().readMDArrayBlockWithOffset(dataset, extents, offset).getAsFlatArray();
-                return IntStream.range(0, shortArray.length).map(i -> shortArray[i]).boxed().toArray();
+                return reader.uint16().readMDArrayBlockWithOffset(dataset, extents, offset).getAsFlatArray();
             case "uint32":
-                int[] intArray = reader.uint32().readMDArrayBlockWithOffset(dataset, extents, offset).getAsFlatArray();
-                return Arrays.stream(intArray).boxed().toArray();
+                return reader.uint32().readMDArrayBlockWithOffset(dataset, extents, offset).getAsFlatArray();
             case "uint64":
-                long[] longArray = reader.uint64().readMDArrayBlockWithOffset(dataset, extents, offset).getAsFlatArray();
-                return Arrays.stream(longArray).boxed().toArray();
+                return reader.uint64().readMDArrayBlockWithOffset(dataset, extents, offset).getAsFlatArray();
+            case "int8":
+                return reader.int8().readMDArrayBlockWithOffset(dataset, extents, offset).getAsFlatArray();
+            case "int16":
+                return reader.int16().readMDArrayBlockWithOffset(dataset, extents, offset).getAsFlatArray();
+            case "int32":
+                return reader.int32().readMDArrayBlockWithOffset(dataset, extents, offset).getAsFlatArray();
+            case "int64":
+                return reader.int64().readMDArrayBlockWithOffset(dataset, extents, offset).getAsFlatArray();
+            case "float64":
+                return reader.float64().readMDArrayBlockWithOffset(dataset, extents, offset).getAsFlatArray();
             default:
                 throw new IllegalArgumentException("Unsupported data type: " + type);
         }
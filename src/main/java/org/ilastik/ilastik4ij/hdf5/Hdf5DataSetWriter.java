@@ -1,6 +1,11 @@
 package org.ilastik.ilastik4ij.hdf5;
 
-import ch.systemsx.cisd.base.mdarray.*;
+import ch.systemsx.cisd.base.mdarray.MDByteArray;
+import ch.systemsx.cisd.base.mdarray.MDDoubleArray;
+import ch.systemsx.cisd.base.mdarray.MDFloatArray;
+import ch.systemsx.cisd.base.mdarray.MDIntArray;
+import ch.systemsx.cisd.base.mdarray.MDLongArray;
+import ch.systemsx.cisd.base.mdarray.MDShortArray;
 import ch.systemsx.cisd.hdf5.HDF5Factory;
 import ch.systemsx.cisd.hdf5.HDF5FloatStorageFeatures;
 import ch.systemsx.cisd.hdf5.HDF5IntStorageFeatures;
@@ -8,25 +13,59 @@ import ch.systemsx.cisd.hdf5.IHDF5Writer;
 import net.imagej.ImgPlus;
 import net.imagej.axis.Axes;
 import net.imagej.axis.AxisType;
-import net.imglib2.RandomAccess;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
 import net.imglib2.type.Type;
 import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.ByteType;
+import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.type.numeric.integer.LongType;
+import net.imglib2.type.numeric.integer.ShortType;
 import net.imglib2.type.numeric.integer.UnsignedByteType;
 import net.imglib2.type.numeric.integer.UnsignedIntType;
 import net.imglib2.type.numeric.integer.UnsignedLongType;
 import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.DoubleType;
 import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Intervals;
 import org.ilastik.ilastik4ij.util.Hdf5Utils;
 import org.scijava.app.StatusService;
 import org.scijava.log.LogService;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 public class Hdf5DataSetWriter<T extends Type<T>> {
     private static final int ARGB_CHANNEL_NUM = 4;
+    // axis order of the exported datasets
+    private static final List<AxisType> DATASET_AXES = Arrays.asList(Axes.TIME, Axes.Z, Axes.Y, Axes.X, Axes.CHANNEL);
+    // queue of writeAsync(), two pending writes let the next image be computed while the last one is written
+    private static final Hdf5WriteQueue WRITE_QUEUE = new Hdf5WriteQueue(2);
+    // threads gathering slabs for write(), shared by all exports so that no pool is set up per export
+    // memory of the blocks gathered ahead of the writing thread
+    private static final long MAX_PIPELINE_BYTES = 256L << 20;
+    private static final ExecutorService GATHER_POOL = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "hdf5-export-gather");
+        thread.setDaemon(true);
+        return thread;
+    });
     private final ImgPlus<T> image;
     private final int numFrames;
     private final int numChannels;
@@ -38,6 +77,9 @@ public class Hdf5DataSetWriter<T extends Type<T>> {
     private final String filename;
     private final String dataset;
     private final int compressionLevel;
+    private int numThreads = 1;
+    private int[] chunkShape;
+    private boolean shuffle;
 
     public Hdf5DataSetWriter(ImgPlus<T> image, String filename, String dataset, int compressionLevel, LogService logService, StatusService statusService) {
         this.image = image;
@@ -53,221 +95,459 @@ public class Hdf5DataSetWriter<T extends Type<T>> {
         this.statusService = Optional.ofNullable(statusService);
     }
 
-    @SuppressWarnings("unchecked")
+    /**
+     * Deflate runs inside JHDF5 on the writing thread, so more threads only help if gathering the blocks,
+     * e.g. from a disk-cached or computed image, is the slower part of the export.
+     *
+     * @param numThreads number of threads gathering blocks of the image for {@link #write()}, defaults to 1;
+     *                   fewer are used if their blocks would take more than {@value #MAX_PIPELINE_BYTES} bytes
+     */
+    public void setNumThreads(int numThreads) {
+        this.numThreads = numThreads;
+    }
+
+    /**
+     * @param chunkShape chunk shape of the dataset in TZYXC order, clamped to the image dimensions,
+     *                   or null for the default of {@link Hdf5Utils#blockSize(long[])}
+     */
+    public void setChunkShape(int[] chunkShape) {
+        if (chunkShape != null && chunkShape.length != DATASET_AXES.size()) {
+            throw new IllegalArgumentException("Chunk shape must have 5 extents in TZYXC order: " + Arrays.toString(chunkShape));
+        }
+        this.chunkShape = chunkShape;
+    }
+
+    /**
+     * @param shuffle whether to apply the shuffle filter before deflate, which often improves
+     *                the compression of integer and floating point data; no effect at compression level 0
+     */
+    public void setShuffle(boolean shuffle) {
+        this.shuffle = shuffle;
+    }
+
+    /**
+     * @return dimensions of the exported dataset in TZYXC order
+     */
+    public long[] getDatasetDimensions() {
+        return new long[]{numFrames, dimZ, dimY, dimX, numChannels};
+    }
+
+    /**
+     * @return path of the HDF5 file written to
+     */
+    public String getFilename() {
+        return filename;
+    }
+
+    /**
+     * Like {@link #write()}, but exports the image in the background. Progress is reported to the
+     * status service as for {@link #write()}.
+     * <p>
+     * At most two exports are pending at a time, further calls block until one of them is done.
+     * Use {@link Hdf5WriteQueue#submit(Hdf5DataSetWriter)} of an own queue for a different limit.
+     * The image must not be modified before the returned future is completed.
+     */
+    public CompletableFuture<Void> writeAsync() {
+        return WRITE_QUEUE.submit(this);
+    }
+
     public void write() {
-        final long[] dims = {numFrames, dimZ, dimY, dimX, numChannels};
+        final long[] dims = getDatasetDimensions();
         String shape = Arrays.stream(dims)
                 .mapToObj(String::valueOf)
                 .collect(Collectors.joining(", "));
         logService.info(String.format("Exporting image of shape (%s). Axis order: 'TZYXC'", shape));
 
         try (IHDF5Writer writer = HDF5Factory.open(filename)) {
-            T val = image.firstElement();
-            if (val instanceof UnsignedByteType) {
-                write(writer, dims, (Class<T>) UnsignedByteType.class);
-            } else if (val instanceof UnsignedShortType) {
-                write(writer, dims, (Class<T>) UnsignedShortType.class);
-            } else if (val instanceof UnsignedIntType) {
-                write(writer, dims, (Class<T>) UnsignedIntType.class);
-            } else if (val instanceof UnsignedLongType) {
-                write(writer, dims, (Class<T>) UnsignedLongType.class);
-            } else if (val instanceof FloatType) {
-                write(writer, dims, (Class<T>) FloatType.class);
-            } else if (val instanceof ARGBType) {
+            if (image.firstElement() instanceof ARGBType) {
                 writeARGB(writer, dims);
             } else {
-                throw new IllegalArgumentException("Unsupported Type: " + val.getClass());
+                Class<T> pixelClass = getPixelClass();
+                logService.info(String.format("Saving as '%s'. Compression level: %d%s", Hdf5Utils.getDtype(pixelClass),
+                        compressionLevel, shuffle ? ", shuffled" : ""));
+                int[] blockSize = getChunkShape(dims);
+                createMDArray(writer, dims, blockSize, pixelClass);
+                writeSlabs(writer, dims, blockSize, 0, pixelClass);
             }
         }
     }
 
-    private void write(IHDF5Writer writer, long[] datasetDims, Class<T> pixelClass) {
-        logService.info(String.format("Saving as '%s'. Compression level: %d", Hdf5Utils.getDtype(pixelClass), compressionLevel));
-        final int totalCheckpoints = numFrames * numChannels * dimZ;
+    /**
+     * Creates the dataset for {@link Hdf5AppendableWriter}: a dataset with the ZYXC extents of
+     * this image and no frames yet, which grows along T as frames are written.
+     */
+    void createAppendableDataset(IHDF5Writer writer) {
+        long[] dims = getDatasetDimensions();
+        int[] blockSize = getChunkShape(dims);
+        dims[0] = 0;
+        createMDArray(writer, dims, blockSize, getPixelClass());
+    }
+
+    /**
+     * Writes this image as frame {@code frame} of a dataset created by {@link #createAppendableDataset}.
+     */
+    void writeFrame(IHDF5Writer writer, long frame) {
+        long[] dims = getDatasetDimensions();
+        writeSlabs(writer, dims, getChunkShape(dims), frame, getPixelClass());
+    }
+
+    @SuppressWarnings("unchecked")
+    Class<T> getPixelClass() {
+        T val = image.firstElement();
+        if (val instanceof UnsignedByteType) {
+            return (Class<T>) UnsignedByteType.class;
+        } else if (val instanceof UnsignedShortType) {
+            return (Class<T>) UnsignedShortType.class;
+        } else if (val instanceof UnsignedIntType) {
+            return (Class<T>) UnsignedIntType.class;
+        } else if (val instanceof UnsignedLongType) {
+            return (Class<T>) UnsignedLongType.class;
+        } else if (val instanceof FloatType) {
+            return (Class<T>) FloatType.class;
+        } else if (val instanceof ByteType) {
+            return (Class<T>) ByteType.class;
+        } else if (val instanceof ShortType) {
+            return (Class<T>) ShortType.class;
+        } else if (val instanceof IntType) {
+            return (Class<T>) IntType.class;
+        } else if (val instanceof LongType) {
+            return (Class<T>) LongType.class;
+        } else if (val instanceof DoubleType) {
+            return (Class<T>) DoubleType.class;
+        } else {
+            throw new IllegalArgumentException("Unsupported Type: " + val.getClass());
+        }
+    }
+
+    /**
+     * Writes the image in chunk-aligned slabs, shifted by {@code frameOffset} along T.
+     */
+    private void writeSlabs(IHDF5Writer writer, long[] datasetDims, int[] blockSize, long frameOffset, Class<T> pixelClass) {
+        // whole chunks are written at once, so that every chunk is compressed exactly once
+        List<Interval> slabs = Hdf5Utils.getChunkAlignedSlabs(datasetDims, blockSize);
+        final int totalCheckpoints = slabs.size();
         final AtomicInteger checkpoint = new AtomicInteger(0);
         statusService.ifPresent(status -> status.showStatus(checkpoint.get(), totalCheckpoints, "Exporting HDF5..."));
 
+        // every worker gathers a slab and has one waiting in the queue, while one more is written
+        final long slabBytes = slabs.stream().mapToLong(Intervals::numElements).max().orElse(0)
+                * ((RealType<?>) image.firstElement()).getBitsPerPixel() / 8;
+        final long maxWorkers = (MAX_PIPELINE_BYTES / Math.max(1, slabBytes) - 1) / 2;
+        final int numWorkers = (int) Math.max(1, Math.min(maxWorkers, Math.min(numThreads, slabs.size())));
+        if (numWorkers == 1) {
+            // slabs are gathered into reused primitive arrays, one per slab size, straight from the image storage if possible
+            Map<Long, Object> buffers = new HashMap<>();
+            for (Interval slab : slabs) {
+                Object flatArr = buffers.computeIfAbsent(Intervals.numElements(slab),
+                        size -> createFlatArray(pixelClass, Math.toIntExact(size)));
+                gatherSlab(slab, flatArr);
+                // save data
+                writeMDArray(writer, flatArr, getDatasetOffset(slab, frameOffset), Intervals.dimensionsAsLongArray(slab), pixelClass);
+                // update progress bar
+                statusService.ifPresent(status -> status.showProgress(checkpoint.incrementAndGet(), totalCheckpoints));
+            }
+        } else {
+            writePipelined(writer, slabs, frameOffset, pixelClass, numWorkers,
+                    () -> statusService.ifPresent(status -> status.showProgress(checkpoint.incrementAndGet(), totalCheckpoints)));
+        }
+        statusService.ifPresent(status -> status.showStatus("Finished Exporting HDF5."));
+    }
+
+    private static long[] getDatasetOffset(Interval slab, long frameOffset) {
+        long[] offset = Intervals.minAsLongArray(slab);
+        offset[0] += frameOffset;
+        return offset;
+    }
 
-        int[] blockSize = Hdf5Utils.blockSize(datasetDims);
-        createMDArray(writer, datasetDims, blockSize, pixelClass);
-
-        RandomAccess<T> rai = image.randomAccess();
-        for (int t = 0; t < numFrames; t++) {
-            if (image.dimensionIndex(Axes.TIME) >= 0)
-                rai.setPosition(t, image.dimensionIndex(Axes.TIME));
-            for (int c = 0; c < numChannels; c++) {
-                if (image.dimensionIndex(Axes.CHANNEL) >= 0)
-                    rai.setPosition(c, image.dimensionIndex(Axes.CHANNEL));
-                for (int z = 0; z < dimZ; z++) {
-                    if (image.dimensionIndex(Axes.Z) >= 0)
-                        rai.setPosition(z, image.dimensionIndex(Axes.Z));
-
-                    // init MD-array
-                    Object[] flatArr = new Object[dimY * dimX];
-                    // copy data XY slice
-                    for (int x = 0; x < dimX; x++) {
-                        rai.setPosition(x, image.dimensionIndex(Axes.X));
-                        for (int y = 0; y < dimY; y++) {
-                            rai.setPosition(y, image.dimensionIndex(Axes.Y));
-                            int index = y * dimX + x;
-                            flatArr[index] = getValue(rai, pixelClass);
+    private void gatherSlab(Interval slab, Object flatArr) {
+        long[] extent = Intervals.dimensionsAsLongArray(slab);
+        PrimitiveBlocks.copyFromImg(image.getImg(), getImageInterval(Intervals.minAsLongArray(slab), extent), flatArr,
+                getImageStrides(extent));
+    }
+
+    /**
+     * Gathers slabs on {@code numWorkers} threads while the calling thread writes them to the file,
+     * in whatever order they are ready. At most {@code numWorkers} gathered slabs wait to be written,
+     * so at most {@code 2 * numWorkers + 1} slabs are in memory; their arrays are recycled once written.
+     * JHDF5 has no direct chunk write, so the deflate filter itself still runs inside the write call
+     * on the calling thread, overlapped with the gathering of the next slabs.
+     */
+    private void writePipelined(IHDF5Writer writer, List<Interval> slabs, long frameOffset, Class<T> pixelClass,
+                                int numWorkers, Runnable progress) {
+        logService.info(String.format("Exporting %d blocks with %d gathering threads", slabs.size(), numWorkers));
+        final BlockingQueue<GatheredSlab> gathered = new ArrayBlockingQueue<>(numWorkers);
+        final ConcurrentMap<Long, Queue<Object>> freeBuffers = new ConcurrentHashMap<>();
+        final AtomicInteger nextSlab = new AtomicInteger();
+        final Runnable worker = () -> {
+            try {
+                for (int i = nextSlab.getAndIncrement(); i < slabs.size(); i = nextSlab.getAndIncrement()) {
+                    Interval slab = slabs.get(i);
+                    try {
+                        Object flatArr = freeBuffers.computeIfAbsent(Intervals.numElements(slab), size -> new ConcurrentLinkedQueue<>()).poll();
+                        if (flatArr == null) {
+                            flatArr = createFlatArray(pixelClass, Math.toIntExact(Intervals.numElements(slab)));
                         }
+                        gatherSlab(slab, flatArr);
+                        gathered.put(new GatheredSlab(slab, flatArr, null));
+                    } catch (RuntimeException | Error e) {
+                        // hand the failure to the writing thread, which is waiting for this slab
+                        gathered.put(new GatheredSlab(slab, null, e));
+                        return;
                     }
-                    long[] offset = {t, z, 0, 0, c};
-                    long[] sliceDims = Hdf5Utils.getXYSliceDims(datasetDims);
-                    // save data
-                    writeMDArray(writer, flatArr, offset, sliceDims, pixelClass);
-                    // update progress bar
-                    statusService.ifPresent(status -> status.showProgress(checkpoint.incrementAndGet(), totalCheckpoints));
                 }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
 
+        final List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < numWorkers; i++) {
+                futures.add(GATHER_POOL.submit(worker));
             }
+            for (int i = 0; i < slabs.size(); i++) {
+                GatheredSlab next = gathered.take();
+                if (next.error != null) {
+                    throw new RuntimeException("HDF5 export failed", next.error);
+                }
+                writeMDArray(writer, next.data, getDatasetOffset(next.slab, frameOffset),
+                        Intervals.dimensionsAsLongArray(next.slab), pixelClass);
+                freeBuffers.get(Intervals.numElements(next.slab)).offer(next.data);
+                progress.run();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("HDF5 export was interrupted", e);
+        } finally {
+            // the pool is shared, so only the workers of this export are stopped
+            futures.forEach(future -> future.cancel(true));
         }
-        statusService.ifPresent(status -> status.showStatus("Finished Exporting HDF5."));
     }
 
-    private void writeMDArray(IHDF5Writer writer, Object[] flatArr, long[] offset, long[] sliceDims, Class<T> pixelClass) {
-        if (pixelClass == UnsignedByteType.class) {
-            byte[] arr = new byte[flatArr.length];
-            for (int i = 0; i < flatArr.length; i++) {
-                arr[i] = (byte) flatArr[i];
-            }
-            MDByteArray mdArray = new MDByteArray(arr, sliceDims);
-            writer.uint8().writeMDArrayBlockWithOffset(dataset, mdArray, offset);
-        } else if (pixelClass == UnsignedShortType.class) {
-            short[] arr = new short[flatArr.length];
-            for (int i = 0; i < flatArr.length; i++) {
-                arr[i] = (short) flatArr[i];
-            }
-            MDShortArray mdArray = new MDShortArray(arr, sliceDims);
-            writer.uint16().writeMDArrayBlockWithOffset(dataset, mdArray, offset);
-        } else if (pixelClass == UnsignedIntType.class) {
-            int[] arr = new int[flatArr.length];
-            for (int i = 0; i < flatArr.length; i++) {
-                arr[i] = (int) flatArr[i];
-            }
-            MDIntArray mdArray = new MDIntArray(arr, sliceDims);
-            writer.uint32().writeMDArrayBlockWithOffset(dataset, mdArray, offset);
-        } else if (pixelClass == UnsignedLongType.class) {
-            long[] arr = new long[flatArr.length];
-            for (int i = 0; i < flatArr.length; i++) {
-                arr[i] = (long) flatArr[i];
+    private static final class GatheredSlab {
+        private final Interval slab;
+        private final Object data;
+        private final Throwable error;
+
+        GatheredSlab(Interval slab, Object data, Throwable error) {
+            this.slab = slab;
+            this.data = data;
+            this.error = error;
+        }
+    }
+
+    /**
+     * @return index of every image dimension in the TZYXC axis order of the dataset, or -1 for other axes
+     */
+    private int[] getDatasetAxisIndices() {
+        int[] result = new int[image.numDimensions()];
+        for (int d = 0; d < result.length; d++) {
+            result[d] = DATASET_AXES.indexOf(image.axis(d).type());
+        }
+        return result;
+    }
+
+    /**
+     * @return interval of the image holding the dataset block at the given TZYXC offset
+     */
+    private Interval getImageInterval(long[] offset, long[] extent) {
+        int[] datasetAxes = getDatasetAxisIndices();
+        long[] min = new long[datasetAxes.length];
+        long[] max = new long[datasetAxes.length];
+        for (int d = 0; d < datasetAxes.length; d++) {
+            if (datasetAxes[d] >= 0) {
+                min[d] = offset[datasetAxes[d]];
+                max[d] = min[d] + extent[datasetAxes[d]] - 1;
             }
-            MDLongArray mdArray = new MDLongArray(arr, sliceDims);
-            writer.uint64().writeMDArrayBlockWithOffset(dataset, mdArray, offset);
+        }
+        return new FinalInterval(min, max);
+    }
+
+    /**
+     * @return strides of a flat (C-ordered) array holding a TZYXC dataset block of the given extent,
+     * for every image dimension
+     */
+    private long[] getImageStrides(long[] extent) {
+        long[] datasetStrides = new long[extent.length];
+        long stride = 1;
+        for (int i = extent.length - 1; i >= 0; i--) {
+            datasetStrides[i] = stride;
+            stride *= extent[i];
+        }
+
+        int[] datasetAxes = getDatasetAxisIndices();
+        long[] result = new long[datasetAxes.length];
+        for (int d = 0; d < datasetAxes.length; d++) {
+            result[d] = datasetAxes[d] >= 0 ? datasetStrides[datasetAxes[d]] : 0;
+        }
+        return result;
+    }
+
+    private Object createFlatArray(Class<T> pixelClass, int length) {
+        if (pixelClass == UnsignedByteType.class || pixelClass == ByteType.class) {
+            return new byte[length];
+        } else if (pixelClass == UnsignedShortType.class || pixelClass == ShortType.class) {
+            return new short[length];
+        } else if (pixelClass == UnsignedIntType.class || pixelClass == IntType.class) {
+            return new int[length];
+        } else if (pixelClass == UnsignedLongType.class || pixelClass == LongType.class) {
+            return new long[length];
         } else if (pixelClass == FloatType.class) {
-            float[] arr = new float[flatArr.length];
-            for (int i = 0; i < flatArr.length; i++) {
-                arr[i] = (float) flatArr[i];
-            }
-            MDFloatArray mdArray = new MDFloatArray(arr, sliceDims);
-            writer.float32().writeMDArrayBlockWithOffset(dataset, mdArray, offset);
+            return new float[length];
+        } else if (pixelClass == DoubleType.class) {
+            return new double[length];
         } else {
             throw new IllegalArgumentException("Unsupported type: " + pixelClass);
         }
     }
 
-    private Object getValue(RandomAccess<T> rai, Class<T> pixelClass) {
+    private void writeMDArray(IHDF5Writer writer, Object flatArr, long[] offset, long[] blockDims, Class<T> pixelClass) {
         if (pixelClass == UnsignedByteType.class) {
-            UnsignedByteType type = (UnsignedByteType) rai.get();
-            return Integer.valueOf(type.get()).byteValue();
+            writer.uint8().writeMDArrayBlockWithOffset(dataset, new MDByteArray((byte[]) flatArr, blockDims), offset);
         } else if (pixelClass == UnsignedShortType.class) {
-            UnsignedShortType type = (UnsignedShortType) rai.get();
-            return Integer.valueOf(type.get()).shortValue();
+            writer.uint16().writeMDArrayBlockWithOffset(dataset, new MDShortArray((short[]) flatArr, blockDims), offset);
         } else if (pixelClass == UnsignedIntType.class) {
-            UnsignedIntType type = (UnsignedIntType) rai.get();
-            return Long.valueOf(type.get()).intValue();
+            writer.uint32().writeMDArrayBlockWithOffset(dataset, new MDIntArray((int[]) flatArr, blockDims), offset);
         } else if (pixelClass == UnsignedLongType.class) {
-            UnsignedLongType type = (UnsignedLongType) rai.get();
-            return type.get();
+            writer.uint64().writeMDArrayBlockWithOffset(dataset, new MDLongArray((long[]) flatArr, blockDims), offset);
         } else if (pixelClass == FloatType.class) {
-            FloatType type = (FloatType) rai.get();
-            return type.get();
+            writer.float32().writeMDArrayBlockWithOffset(dataset, new MDFloatArray((float[]) flatArr, blockDims), offset);
+        } else if (pixelClass == ByteType.class) {
+            writer.int8().writeMDArrayBlockWithOffset(dataset, new MDByteArray((byte[]) flatArr, blockDims), offset);
+        } else if (pixelClass == ShortType.class) {
+            writer.int16().writeMDArrayBlockWithOffset(dataset, new MDShortArray((short[]) flatArr, blockDims), offset);
+        } else if (pixelClass == IntType.class) {
+            writer.int32().writeMDArrayBlockWithOffset(dataset, new MDIntArray((int[]) flatArr, blockDims), offset);
+        } else if (pixelClass == LongType.class) {
+            writer.int64().writeMDArrayBlockWithOffset(dataset, new MDLongArray((long[]) flatArr, blockDims), offset);
+        } else if (pixelClass == DoubleType.class) {
+            writer.float64().writeMDArrayBlockWithOffset(dataset, new MDDoubleArray((double[]) flatArr, blockDims), offset);
         } else {
             throw new IllegalArgumentException("Unsupported type: " + pixelClass);
         }
     }
 
     private void createMDArray(IHDF5Writer writer, long[] datasetDims, int[] blockSize, Class<T> pixelClass) {
+        HDF5IntStorageFeatures intFeatures = HDF5IntStorageFeatures.build()
+                .deflateLevel((byte) compressionLevel)
+                .shuffleBeforeDeflate(shuffle)
+                .datasetReplacementEnforceReplaceWithNew()
+                .features();
+        HDF5FloatStorageFeatures floatFeatures = HDF5FloatStorageFeatures.build()
+                .deflateLevel((byte) compressionLevel)
+                .shuffleBeforeDeflate(shuffle)
+                .datasetReplacementEnforceReplaceWithNew()
+                .features();
+
         if (pixelClass == UnsignedByteType.class) {
-            writer.uint8().createMDArray(dataset, datasetDims, blockSize, HDF5IntStorageFeatures.createDeflationDelete(compressionLevel));
+            writer.uint8().createMDArray(dataset, datasetDims, blockSize, intFeatures);
         } else if (pixelClass == UnsignedShortType.class) {
-            writer.uint16().createMDArray(dataset, datasetDims, blockSize, HDF5IntStorageFeatures.createDeflationDelete(compressionLevel));
+            writer.uint16().createMDArray(dataset, datasetDims, blockSize, intFeatures);
         } else if (pixelClass == UnsignedIntType.class) {
-            writer.uint32().createMDArray(dataset, datasetDims, blockSize, HDF5IntStorageFeatures.createDeflationDelete(compressionLevel));
+            writer.uint32().createMDArray(dataset, datasetDims, blockSize, intFeatures);
         } else if (pixelClass == UnsignedLongType.class) {
-            writer.uint64().createMDArray(dataset, datasetDims, blockSize, HDF5IntStorageFeatures.createDeflationDelete(compressionLevel));
+            writer.uint64().createMDArray(dataset, datasetDims, blockSize, intFeatures);
         } else if (pixelClass == FloatType.class) {
-            writer.float32().createMDArray(dataset, datasetDims, blockSize, HDF5FloatStorageFeatures.createDeflationDelete(compressionLevel));
+            writer.float32().createMDArray(dataset, datasetDims, blockSize, floatFeatures);
+        } else if (pixelClass == ByteType.class) {
+            writer.int8().createMDArray(dataset, datasetDims, blockSize, intFeatures);
+        } else if (pixelClass == ShortType.class) {
+            writer.int16().createMDArray(dataset, datasetDims, blockSize, intFeatures);
+        } else if (pixelClass == IntType.class) {
+            writer.int32().createMDArray(dataset, datasetDims, blockSize, intFeatures);
+        } else if (pixelClass == LongType.class) {
+            writer.int64().createMDArray(dataset, datasetDims, blockSize, intFeatures);
+        } else if (pixelClass == DoubleType.class) {
+            writer.float64().createMDArray(dataset, datasetDims, blockSize, floatFeatures);
         } else {
             throw new IllegalArgumentException("Unsupported type: " + pixelClass);
         }
     }
 
+    private int[] getChunkShape(long[] datasetDims) {
+        if (chunkShape == null) {
+            return Hdf5Utils.blockSize(datasetDims);
+        }
+        int[] result = new int[datasetDims.length];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = (int) Math.max(1, Math.min(chunkShape[i], datasetDims[i]));
+        }
+        return result;
+    }
+
+    /**
+     * Exports an ARGB image as 'uint8' with 4 channels in A, R, G, B order, a whole chunk-aligned slab at a time.
+     * Without a channel axis, every packed pixel is read once and unpacked into all four channels. An image with
+     * 3 (RGB) or 4 (ARGB) channels holds one component per channel, of which the lowest byte is exported; the alpha
+     * of RGB images is set to 255.
+     */
+    @SuppressWarnings("unchecked")
     private void writeARGB(IHDF5Writer writer, long[] datasetDims) {
+        if (numChannels != 1 && numChannels != ARGB_CHANNEL_NUM - 1 && numChannels != ARGB_CHANNEL_NUM) {
+            throw new IllegalArgumentException(String.format("Cannot export ARGB image with %d channels: " +
+                    "expected packed pixels without a channel axis, 3 (RGB) or 4 (ARGB) channels", numChannels));
+        }
         logService.info("Saving ARGB as 'uint8' (4 channels). Compression level: " + compressionLevel);
-
-        boolean isAlphaChannelPresent = true;
         if (numChannels == ARGB_CHANNEL_NUM - 1) {
-            logService.warn("Only 3 channel RGB found. Setting ALPHA channel to -1 (transparent).");
-            isAlphaChannelPresent = false;
-            datasetDims[4] = ARGB_CHANNEL_NUM; // set channel dimension to 4 explicitly
+            logService.warn("Only 3 channel RGB found. Setting ALPHA channel to 255 (opaque).");
         }
+        datasetDims[4] = ARGB_CHANNEL_NUM; // set channel dimension to 4 explicitly
 
-        final int totalCheckpoints = numFrames * ARGB_CHANNEL_NUM * dimZ;
+        int[] blockSize = getChunkShape(datasetDims);
+        createMDArray(writer, datasetDims, blockSize, (Class<T>) UnsignedByteType.class);
+
+        // slabs span all four channels of the dataset, which are filled from the same pixels
+        int[] slabSize = blockSize.clone();
+        slabSize[4] = ARGB_CHANNEL_NUM;
+        List<Interval> slabs = Hdf5Utils.getChunkAlignedSlabs(datasetDims, slabSize);
+        final int totalCheckpoints = slabs.size();
         final AtomicInteger checkpoint = new AtomicInteger(0);
         statusService.ifPresent(s -> s.showStatus(checkpoint.get(), totalCheckpoints, "Exporting HDF5..."));
 
-        int[] blockSize = Hdf5Utils.blockSize(datasetDims);
-        createMDArray(writer, datasetDims, blockSize, (Class<T>) UnsignedByteType.class);
+        Map<Long, int[]> packedBuffers = new HashMap<>();
+        Map<Long, byte[]> channelBuffers = new HashMap<>();
+        for (Interval slab : slabs) {
+            long[] offset = Intervals.minAsLongArray(slab);
+            long[] extent = Intervals.dimensionsAsLongArray(slab);
+            long[] packedExtent = extent.clone();
+            packedExtent[4] = 1;
+            int numPixels = Math.toIntExact(Intervals.numElements(packedExtent));
+            int[] packed = packedBuffers.computeIfAbsent((long) numPixels, size -> new int[numPixels]);
+            byte[] flatArr = channelBuffers.computeIfAbsent((long) numPixels, size -> new byte[numPixels * ARGB_CHANNEL_NUM]);
 
-        RandomAccess<T> rai = image.randomAccess();
-        for (int t = 0; t < numFrames; t++) {
-            if (image.dimensionIndex(Axes.TIME) >= 0)
-                rai.setPosition(t, image.dimensionIndex(Axes.TIME));
-            for (int z = 0; z < dimZ; z++) {
-                if (image.dimensionIndex(Axes.Z) >= 0)
-                    rai.setPosition(z, image.dimensionIndex(Axes.Z));
+            if (numChannels == 1) {
+                PrimitiveBlocks.copyFromImg(image.getImg(), getImageInterval(offset, packedExtent), packed, getImageStrides(packedExtent));
+                // channel is the fastest varying axis of the dataset
+                for (int i = 0, j = 0; i < numPixels; i++, j += ARGB_CHANNEL_NUM) {
+                    int argb = packed[i];
+                    flatArr[j] = (byte) (argb >>> 24);
+                    flatArr[j + 1] = (byte) (argb >>> 16);
+                    flatArr[j + 2] = (byte) (argb >>> 8);
+                    flatArr[j + 3] = (byte) argb;
+                }
+            } else {
                 for (int c = 0; c < ARGB_CHANNEL_NUM; c++) {
-                    // init MD-array
-                    Object[] flatArr = new Object[dimY * dimX];
-                    boolean skipCopying = false;
-                    if (isAlphaChannelPresent) {
-                        if (image.dimensionIndex(Axes.CHANNEL) >= 0)
-                            rai.setPosition(c, image.dimensionIndex(Axes.CHANNEL));
-                    } else {
-                        if (c == 0) {
-                            Arrays.fill(flatArr, (byte) -1);  // hardcode alpha channel
-                            skipCopying = true;
-                        } else {
-                            if (image.dimensionIndex(Axes.CHANNEL) >= 0) {
-                                rai.setPosition(c - 1, image.dimensionIndex(Axes.CHANNEL));
-                            }
+                    // RGB images have no alpha channel, their channels are written to 1..3
+                    long channel = c - (ARGB_CHANNEL_NUM - numChannels);
+                    if (channel < 0) {
+                        for (int j = c; j < flatArr.length; j += ARGB_CHANNEL_NUM) {
+                            flatArr[j] = (byte) 255;
                         }
+                        continue;
                     }
-                    if (!skipCopying) {
-                        // copy data XY slice
-                        for (int x = 0; x < dimX; x++) {
-                            rai.setPosition(x, image.dimensionIndex(Axes.X));
-                            for (int y = 0; y < dimY; y++) {
-                                rai.setPosition(y, image.dimensionIndex(Axes.Y));
-
-                                int index = y * dimX + x;
-                                ARGBType type = (ARGBType) rai.get();
-                                byte value = Integer.valueOf(type.get()).byteValue();
-                                flatArr[index] = value;
-                            }
-                        }
+                    long[] channelOffset = offset.clone();
+                    channelOffset[4] = channel;
+                    PrimitiveBlocks.copyFromImg(image.getImg(), getImageInterval(channelOffset, packedExtent), packed,
+                            getImageStrides(packedExtent));
+                    for (int i = 0, j = c; i < numPixels; i++, j += ARGB_CHANNEL_NUM) {
+                        flatArr[j] = (byte) packed[i];
                     }
-                    long[] offset = {t, z, 0, 0, c};
-                    long[] sliceDims = Hdf5Utils.getXYSliceDims(datasetDims);
-                    // save data
-                    writeMDArray(writer, flatArr, offset, sliceDims, (Class<T>) UnsignedByteType.class);
-                    // update progress bar
-                    statusService.ifPresent(s -> s.showProgress(checkpoint.incrementAndGet(), totalCheckpoints));
                 }
-
             }
+            // save data
+            writeMDArray(writer, flatArr, offset, extent, (Class<T>) UnsignedByteType.class);
+            // update progress bar
+            statusService.ifPresent(s -> s.showProgress(checkpoint.incrementAndGet(), totalCheckpoints));
         }
         statusService.ifPresent(s -> s.showStatus("Finished Exporting HDF5."));
     }
@@ -0,0 +1,77 @@
+package org.ilastik.ilastik4ij.hdf5;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs HDF5 exports in the background, see {@link Hdf5DataSetWriter#writeAsync()}.
+ * <p>
+ * At most {@code maxPendingWrites} exports are queued or running at a time; submitting another one
+ * blocks until one of them finishes, so the images held by pending exports stay bounded.
+ * Exports to the same file run one after the other, in submission order.
+ */
+public class Hdf5WriteQueue {
+    private final int maxPendingWrites;
+    private final Semaphore pendingWrites;
+    private final ExecutorService executor;
+    private final Map<String, CompletableFuture<Void>> lastWrites = new HashMap<>();
+
+    public Hdf5WriteQueue(int maxPendingWrites) {
+        if (maxPendingWrites < 1) {
+            throw new IllegalArgumentException("At least one pending write must be allowed: " + maxPendingWrites);
+        }
+        this.maxPendingWrites = maxPendingWrites;
+        this.pendingWrites = new Semaphore(maxPendingWrites);
+        this.executor = Executors.newFixedThreadPool(maxPendingWrites, runnable -> {
+            Thread thread = new Thread(runnable, "hdf5-write-queue");
+            // pending exports must not keep Fiji from exiting
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Queues {@link Hdf5DataSetWriter#write()}, blocking while the maximum number of writes is pending.
+     *
+     * @return future completed once the dataset is written and the file is closed, or completed
+     * exceptionally with the error of the export
+     */
+    public CompletableFuture<Void> submit(Hdf5DataSetWriter<?> writer) {
+        pendingWrites.acquireUninterruptibly();
+        String file = new File(writer.getFilename()).getAbsolutePath();
+        CompletableFuture<Void> result;
+        synchronized (lastWrites) {
+            CompletableFuture<Void> previous = lastWrites.getOrDefault(file, CompletableFuture.completedFuture(null));
+            // the outcome of the previous export to the file does not matter, only that it is done
+            result = previous.handle((ignored, error) -> null)
+                    .thenRunAsync(writer::write, executor);
+            lastWrites.put(file, result);
+        }
+        return result.whenComplete((ignored, error) -> {
+            synchronized (lastWrites) {
+                lastWrites.remove(file, result);
+            }
+            pendingWrites.release();
+        });
+    }
+
+    /**
+     * Waits for all pending writes, then stops the worker threads.
+     */
+    public void shutdown() throws InterruptedException {
+        // writes waiting for an earlier write to the same file are not handed to the executor yet
+        pendingWrites.acquire(maxPendingWrites);
+        try {
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } finally {
+            pendingWrites.release(maxPendingWrites);
+        }
+    }
+}
@@ -0,0 +1,401 @@
+package org.ilastik.ilastik4ij.hdf5;
+
+import net.imglib2.Cursor;
+import net.imglib2.Dirty;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.cache.img.SingleCellArrayImg;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.img.cell.AbstractCellImg;
+import net.imglib2.img.cell.Cell;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.img.planar.PlanarImg;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.IntegerType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+import java.lang.reflect.Array;
+
+/**
+ * Boxing-free copies between flat primitive arrays (as returned by JHDF5) and the
+ * storage arrays backing imglib2 images.
+ * <p>
+ * All blocks are described by an interval in image coordinates plus the strides of
+ * the flat array holding them, so the same copy serves every HDF5 axis order.
+ */
+public final class PrimitiveBlocks {
+
+    /**
+     * Receives a storage array of an image together with the image interval it holds.
+     * The array is laid out flat, with the first dimension varying fastest.
+     */
+    @FunctionalInterface
+    public interface StorageConsumer {
+        void accept(Object array, Interval interval);
+    }
+
+    private PrimitiveBlocks() {
+    }
+
+    /**
+     * @return true if the storage arrays of the image can be accessed directly
+     */
+    public static boolean hasStorageArrays(RandomAccessibleInterval<?> img) {
+        return img instanceof ArrayImg || img instanceof PlanarImg || img instanceof AbstractCellImg
+                || img instanceof SingleCellArrayImg;
+    }
+
+    /**
+     * Copies a block, held in {@code src} with the given strides, into the storage arrays of {@code img}.
+     *
+     * @param src        primitive array of the same component type as the storage of {@code img}
+     * @param srcStrides strides of {@code src} for every image dimension
+     * @param block      interval of {@code img} held by {@code src}
+     */
+    public static void copyToImg(Object src, long[] srcStrides, Interval block, RandomAccessibleInterval<?> img) {
+        final int n = block.numDimensions();
+        forEachStorageArray(img, block, true, (array, storage) -> {
+            final FinalInterval overlap = Intervals.intersect(block, storage);
+            final long[] size = new long[n];
+            overlap.dimensions(size);
+
+            final long[] dstStrides = flatStrides(storage);
+            long srcOffset = 0;
+            long dstOffset = 0;
+            for (int d = 0; d < n; d++) {
+                srcOffset += (overlap.min(d) - block.min(d)) * srcStrides[d];
+                dstOffset += (overlap.min(d) - storage.min(d)) * dstStrides[d];
+            }
+            copy(src, srcOffset, srcStrides, array, dstOffset, dstStrides, size);
+        });
+    }
+
+    /**
+     * Copies a block of {@code img} into {@code dst}, the reverse of {@link #copyToImg}. Images without
+     * accessible storage arrays (views, converted images) are read through a cursor instead, which
+     * still writes straight into {@code dst} without boxing.
+     *
+     * @param block      interval of {@code img} to copy
+     * @param dst        primitive array of the same component type as the storage of {@code img}
+     * @param dstStrides strides of {@code dst} for every image dimension
+     */
+    public static void copyFromImg(RandomAccessibleInterval<?> img, Interval block, Object dst, long[] dstStrides) {
+        if (!hasStorageArrays(img)) {
+            copyFromCursor(img, block, dst, dstStrides);
+            return;
+        }
+
+        final int n = block.numDimensions();
+        forEachStorageArray(img, block, false, (array, storage) -> {
+            final FinalInterval overlap = Intervals.intersect(block, storage);
+            final long[] size = new long[n];
+            overlap.dimensions(size);
+
+            final long[] srcStrides = flatStrides(storage);
+            long srcOffset = 0;
+            long dstOffset = 0;
+            for (int d = 0; d < n; d++) {
+                srcOffset += (overlap.min(d) - storage.min(d)) * srcStrides[d];
+                dstOffset += (overlap.min(d) - block.min(d)) * dstStrides[d];
+            }
+            copy(array, srcOffset, srcStrides, dst, dstOffset, dstStrides, size);
+        });
+    }
+
+    /**
+     * Copies a block of {@code src} into {@code dst} at {@code dstMin}, through a flat array of the
+     * storage type of {@code dst}. Both images must have the same pixel type.
+     *
+     * @param block interval of {@code src} to copy
+     */
+    public static void copyBlock(RandomAccessibleInterval<?> src, Interval block, RandomAccessibleInterval<?> dst, long[] dstMin) {
+        final int n = block.numDimensions();
+        final long[] dstMax = new long[n];
+        for (int d = 0; d < n; d++) {
+            dstMax[d] = dstMin[d] + block.dimension(d) - 1;
+        }
+        final FinalInterval dstBlock = new FinalInterval(dstMin, dstMax);
+
+        final Object[] storage = new Object[1];
+        forEachStorageArray(dst, dstBlock, false, (array, interval) -> storage[0] = array);
+        final Object flat = Array.newInstance(storage[0].getClass().getComponentType(),
+                Math.toIntExact(Intervals.numElements(block)));
+        final long[] strides = flatStrides(block);
+        copyFromImg(src, block, flat, strides);
+        copyToImg(flat, strides, dstBlock, dst);
+    }
+
+    private static void copyFromCursor(RandomAccessibleInterval<?> img, Interval block, Object dst, long[] dstStrides) {
+        final Cursor<?> cursor = Views.flatIterable(Views.interval(img, block)).cursor();
+        final FlatIndex index = new FlatIndex(block, dstStrides);
+        if (dst instanceof byte[]) {
+            final byte[] t = (byte[]) dst;
+            while (cursor.hasNext()) {
+                t[index.next()] = (byte) ((IntegerType<?>) cursor.next()).getIntegerLong();
+            }
+        } else if (dst instanceof short[]) {
+            final short[] t = (short[]) dst;
+            while (cursor.hasNext()) {
+                t[index.next()] = (short) ((IntegerType<?>) cursor.next()).getIntegerLong();
+            }
+        } else if (dst instanceof int[]) {
+            final int[] t = (int[]) dst;
+            while (cursor.hasNext()) {
+                final Object pixel = cursor.next();
+                // packed ARGB pixels are stored in an int[] as well
+                t[index.next()] = pixel instanceof ARGBType
+                        ? ((ARGBType) pixel).get()
+                        : (int) ((IntegerType<?>) pixel).getIntegerLong();
+            }
+        } else if (dst instanceof long[]) {
+            final long[] t = (long[]) dst;
+            while (cursor.hasNext()) {
+                t[index.next()] = ((IntegerType<?>) cursor.next()).getIntegerLong();
+            }
+        } else if (dst instanceof float[]) {
+            final float[] t = (float[]) dst;
+            while (cursor.hasNext()) {
+                t[index.next()] = ((RealType<?>) cursor.next()).getRealFloat();
+            }
+        } else if (dst instanceof double[]) {
+            final double[] t = (double[]) dst;
+            while (cursor.hasNext()) {
+                t[index.next()] = ((RealType<?>) cursor.next()).getRealDouble();
+            }
+        } else {
+            throw new IllegalArgumentException("Unsupported array type: " + dst.getClass());
+        }
+    }
+
+    /**
+     * Index into a strided flat array, advanced in the flat iteration order of an interval.
+     */
+    private static final class FlatIndex {
+        private final long[] strides;
+        private final long[] size;
+        private final long[] pos;
+        private long index;
+
+        FlatIndex(Interval interval, long[] strides) {
+            this.strides = strides;
+            this.size = new long[interval.numDimensions()];
+            this.pos = new long[size.length];
+            interval.dimensions(size);
+        }
+
+        int next() {
+            final int current = Math.toIntExact(index);
+            for (int d = 0; d < size.length; d++) {
+                index += strides[d];
+                if (++pos[d] < size[d]) break;
+                index -= strides[d] * size[d];
+                pos[d] = 0;
+            }
+            return current;
+        }
+    }
+
+    /**
+     * Visits every storage array of {@code img} that overlaps {@code region}.
+     *
+     * @param modified true if the consumer writes to the arrays, so that cells of
+     *                 disk-cached images are marked dirty and written back on eviction
+     */
+    public static void forEachStorageArray(RandomAccessibleInterval<?> img, Interval region, boolean modified,
+                                           StorageConsumer consumer) {
+        if (img instanceof ArrayImg) {
+            final Object access = ((ArrayImg<?, ?>) img).update(null);
+            consumer.accept(storageArray(access), new FinalInterval(img));
+        } else if (img instanceof SingleCellArrayImg) {
+            // a single cell handed to a CellLoader, positioned at the cell's min
+            final Object access = ((SingleCellArrayImg<?, ?>) img).update(null);
+            consumer.accept(storageArray(access), new FinalInterval(img));
+        } else if (img instanceof PlanarImg) {
+            forEachPlane((PlanarImg<?, ?>) img, region, consumer);
+        } else if (img instanceof AbstractCellImg) {
+            forEachCell((AbstractCellImg<?, ?, ?, ?>) img, region, modified, consumer);
+        } else {
+            throw new IllegalArgumentException("Unsupported image container: " + img.getClass());
+        }
+    }
+
+    private static void forEachPlane(PlanarImg<?, ?> img, Interval region, StorageConsumer consumer) {
+        final int n = img.numDimensions();
+        if (n <= 2) {
+            consumer.accept(storageArray(img.getPlane(0)), new FinalInterval(img));
+            return;
+        }
+
+        // plane index and position iterate over dimensions 2..n-1, inside the region only
+        final long[] min = new long[n];
+        final long[] max = new long[n];
+        max[0] = img.max(0);
+        max[1] = img.max(1);
+        final long[] pos = new long[n];
+        for (int d = 2; d < n; d++) {
+            pos[d] = region.min(d);
+        }
+
+        while (true) {
+            long planeIndex = 0;
+            long planeStride = 1;
+            for (int d = 2; d < n; d++) {
+                planeIndex += pos[d] * planeStride;
+                planeStride *= img.dimension(d);
+                min[d] = pos[d];
+                max[d] = pos[d];
+            }
+            consumer.accept(storageArray(img.getPlane(Math.toIntExact(planeIndex))), new FinalInterval(min, max));
+
+            int d = 2;
+            for (; d < n; d++) {
+                if (++pos[d] <= region.max(d)) break;
+                pos[d] = region.min(d);
+            }
+            if (d == n) return;
+        }
+    }
+
+    private static void forEachCell(AbstractCellImg<?, ?, ?, ?> img, Interval region, boolean modified,
+                                    StorageConsumer consumer) {
+        final int n = img.numDimensions();
+        final CellGrid grid = img.getCellGrid();
+        final int[] cellDims = new int[n];
+        grid.cellDimensions(cellDims);
+
+        final long[] gridMin = new long[n];
+        final long[] gridMax = new long[n];
+        for (int d = 0; d < n; d++) {
+            gridMin[d] = region.min(d) / cellDims[d];
+            gridMax[d] = region.max(d) / cellDims[d];
+        }
+
+        final RandomAccess<? extends Cell<?>> cells = img.getCells().randomAccess();
+        final long[] gridPos = gridMin.clone();
+        final long[] cellMin = new long[n];
+        final int[] cellSize = new int[n];
+        final long[] cellMax = new long[n];
+        while (true) {
+            cells.setPosition(gridPos);
+            final Cell<?> cell = cells.get();
+            grid.getCellDimensions(gridPos, cellMin, cellSize);
+            for (int d = 0; d < n; d++) {
+                cellMax[d] = cellMin[d] + cellSize[d] - 1;
+            }
+            consumer.accept(storageArray(cell.getData()), new FinalInterval(cellMin, cellMax));
+            if (modified && cell.getData() instanceof Dirty) {
+                ((Dirty) cell.getData()).setDirty();
+            }
+
+            int d = 0;
+            for (; d < n; d++) {
+                if (++gridPos[d] <= gridMax[d]) break;
+                gridPos[d] = gridMin[d];
+            }
+            if (d == n) return;
+        }
+    }
+
+    private static Object storageArray(Object access) {
+        if (!(access instanceof ArrayDataAccess)) {
+            throw new IllegalArgumentException("Unsupported storage access: " + access.getClass());
+        }
+        return ((ArrayDataAccess<?>) access).getCurrentStorageArray();
+    }
+
+    /**
+     * @return strides of a flat array holding the interval, first dimension varying fastest
+     */
+    public static long[] flatStrides(Interval interval) {
+        final long[] strides = new long[interval.numDimensions()];
+        long stride = 1;
+        for (int d = 0; d < strides.length; d++) {
+            strides[d] = stride;
+            stride *= interval.dimension(d);
+        }
+        return strides;
+    }
+
+    /**
+     * Strided n-dimensional copy between two primitive arrays of the same component type.
+     * Runs along the first dimension are copied with {@link System#arraycopy} whenever both
+     * sides are contiguous in that dimension.
+     */
+    public static void copy(Object src, long srcOffset, long[] srcStrides,
+                            Object dst, long dstOffset, long[] dstStrides, long[] size) {
+        final int n = size.length;
+        for (long s : size) {
+            if (s <= 0) return;
+        }
+
+        final long[] pos = new long[n];
+        final int length = Math.toIntExact(size[0]);
+        final int srcStep = Math.toIntExact(srcStrides[0]);
+        final int dstStep = Math.toIntExact(dstStrides[0]);
+        long srcIndex = srcOffset;
+        long dstIndex = dstOffset;
+        while (true) {
+            copyRun(src, Math.toIntExact(srcIndex), srcStep, dst, Math.toIntExact(dstIndex), dstStep, length);
+
+            int d = 1;
+            for (; d < n; d++) {
+                srcIndex += srcStrides[d];
+                dstIndex += dstStrides[d];
+                if (++pos[d] < size[d]) break;
+                srcIndex -= srcStrides[d] * size[d];
+                dstIndex -= dstStrides[d] * size[d];
+                pos[d] = 0;
+            }
+            if (d == n) return;
+        }
+    }
+
+    private static void copyRun(Object src, int srcPos, int srcStep, Object dst, int dstPos, int dstStep, int length) {
+        if (srcStep == 1 && dstStep == 1) {
+            System.arraycopy(src, srcPos, dst, dstPos, length);
+        } else if (src instanceof byte[]) {
+            final byte[] s = (byte[]) src;
+            final byte[] t = (byte[]) dst;
+            for (int i = 0; i < length; i++) {
+                t[dstPos + i * dstStep] = s[srcPos + i * srcStep];
+            }
+        } else if (src instanceof short[]) {
+            final short[] s = (short[]) src;
+            final short[] t = (short[]) dst;
+            for (int i = 0; i < length; i++) {
+                t[dstPos + i * dstStep] = s[srcPos + i * srcStep];
+            }
+        } else if (src instanceof int[]) {
+            final int[] s = (int[]) src;
+            final int[] t = (int[]) dst;
+            for (int i = 0; i < length; i++) {
+                t[dstPos + i * dstStep] = s[srcPos + i * srcStep];
+            }
+        } else if (src instanceof long[]) {
+            final long[] s = (long[]) src;
+            final long[] t = (long[]) dst;
+            for (int i = 0; i < length; i++) {
+                t[dstPos + i * dstStep] = s[srcPos + i * srcStep];
+            }
+        } else if (src instanceof float[]) {
+            final float[] s = (float[]) src;
+            final float[] t = (float[]) dst;
+            for (int i = 0; i < length; i++) {
+                t[dstPos + i * dstStep] = s[srcPos + i * srcStep];
+            }
+        } else if (src instanceof double[]) {
+            final double[] s = (double[]) src;
+            final double[] t = (double[]) dst;
+            for (int i = 0; i < length; i++) {
+                t[dstPos + i * dstStep] = s[srcPos + i * srcStep];
+            }
+        } else {
+            throw new IllegalArgumentException("Unsupported array type: " + src.getClass());
+        }
+    }
+}
@@ -8,6 +8,7 @@ import net.imagej.ImgPlus;
 import net.imglib2.type.NativeType;
 import net.imglib2.type.numeric.RealType;
 import org.ilastik.ilastik4ij.hdf5.Hdf5DataSetWriter;
+import org.ilastik.ilastik4ij.util.Hdf5Utils;
 import org.scijava.app.StatusService;
 import org.scijava.command.Command;
 import org.scijava.log.LogService;
@@ -40,6 +41,10 @@ public class IlastikExportCommand implements Command {
         gd.addStringField("ExportPath", hdf5FilePath, 100);
         gd.addStringField("DatasetName", "data");
         gd.addStringField("CompressionLevel", "0");
+        gd.addCheckbox("Shuffle", false);
+        gd.addStringField("ChunkShape", "auto");
+        gd.addMessage("ChunkShape: 'auto' for ilastik's blockwise access, 'planes' for whole XY planes,\n" +
+                "or explicit TZYXC extents such as '1,32,32,32,1'.");
 
         gd.showDialog();
         if (gd.wasCanceled()) return;
@@ -47,21 +52,27 @@ public class IlastikExportCommand implements Command {
         hdf5FilePath = gd.getNextString();
         String datasetName = gd.getNextString();
         int compressionLevel = Integer.parseInt(gd.getNextString());
+        boolean shuffle = gd.getNextBoolean();
+        String chunkShape = gd.getNextString();
 
         if (!hdf5FilePath.endsWith(".h5")) {
             IJ.error("Error: HDF5 export file must have '.h5' suffix");
         } else {
-            saveImage(hdf5FilePath, datasetName, compressionLevel);
+            saveImage(hdf5FilePath, datasetName, compressionLevel, shuffle, chunkShape);
         }
     }
 
-    private <T extends RealType<T> & NativeType<T>> void saveImage(String hdf5FilePath, String datasetName, int compressionLevel) {
+    private <T extends RealType<T> & NativeType<T>> void saveImage(String hdf5FilePath, String datasetName, int compressionLevel,
+                                                                   boolean shuffle, String chunkShape) {
         Instant start = Instant.now();
 
         @SuppressWarnings("unchecked")
         ImgPlus<T> imgPlus = (ImgPlus<T>) input.getImgPlus();
-        new Hdf5DataSetWriter<>(imgPlus, hdf5FilePath, datasetName,
-                compressionLevel, logService, statusService).write();
+        Hdf5DataSetWriter<T> writer = new Hdf5DataSetWriter<>(imgPlus, hdf5FilePath, datasetName,
+                compressionLevel, logService, statusService);
+        writer.setShuffle(shuffle);
+        writer.setChunkShape(Hdf5Utils.chunkShape(chunkShape, writer.getDatasetDimensions()));
+        writer.write();
 
         Instant finish = Instant.now();
         long timeElapsed = Duration.between(start, finish).toMillis();
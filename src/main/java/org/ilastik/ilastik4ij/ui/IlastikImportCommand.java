@@ -1,33 +1,36 @@
 package org.ilastik.ilastik4ij.ui;
 
 import ch.systemsx.cisd.hdf5.HDF5DataSetInformation;
-import ch.systemsx.cisd.hdf5.HDF5Factory;
-import ch.systemsx.cisd.hdf5.HDF5LinkInformation;
-import ch.systemsx.cisd.hdf5.IHDF5Reader;
 import ij.IJ;
 import ij.gui.GenericDialog;
 import ij.io.OpenDialog;
+import net.imagej.Dataset;
+import net.imagej.DatasetService;
 import net.imagej.ImgPlus;
-import net.imglib2.img.display.imagej.ImageJFunctions;
 import net.imglib2.type.NativeType;
 import net.imglib2.type.numeric.RealType;
+import org.ilastik.ilastik4ij.hdf5.Hdf5DataSetIndex;
 import org.ilastik.ilastik4ij.hdf5.Hdf5DataSetReader;
 import org.ilastik.ilastik4ij.util.Hdf5Utils;
+import org.scijava.ItemIO;
 import org.scijava.app.StatusService;
 import org.scijava.command.Command;
 import org.scijava.log.LogService;
 import org.scijava.plugin.Parameter;
 import org.scijava.plugin.Plugin;
+import org.scijava.ui.UIService;
 
 import java.time.Duration;
 import java.time.Instant;
-import java.util.LinkedHashMap;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 
 @Plugin(type = Command.class, headless = true, menuPath = "Plugins>ilastik>Import HDF5")
 public class IlastikImportCommand implements Command {
+    // files with more datasets are listed without shape and type
+    private static final int MAX_DESCRIBED_DATASETS = 100;
 
     @Parameter
     private LogService logService;
@@ -35,6 +38,16 @@ public class IlastikImportCommand implements Command {
     @Parameter
     private StatusService statusService;
 
+    @Parameter
+    private DatasetService datasetService;
+
+    @Parameter
+    private UIService uiService;
+
+    // built from the ImgPlus of the reader, so that the workflow commands can pass the file to ilastik as is
+    @Parameter(type = ItemIO.OUTPUT)
+    private Dataset dataset;
+
     @Override
     public void run() {
         OpenDialog od = new OpenDialog("Select HDF5 file", "", "");
@@ -44,32 +57,46 @@ public class IlastikImportCommand implements Command {
             return;
         }
 
-        try (IHDF5Reader reader = HDF5Factory.openForReading(hdf5FilePath)) {
-            Map<String, HDF5DataSetInformation> datasets = findAvailableDatasets(reader, "/");
-            List<String> choices = datasets.entrySet()
-                    .stream()
-                    .map(e -> Hdf5Utils.dropdownName(e.getKey(), e.getValue()))
-                    .collect(Collectors.toList());
-
-            GenericDialog gd = new GenericDialog("Select dataset name and axis order");
-            String firstChoice = choices.get(0);
-            gd.addChoice("DatasetName", choices.toArray(new String[0]), firstChoice);
-            int rank = datasets.get(Hdf5Utils.parseDataset(firstChoice)).getRank();
-            gd.addStringField("AxisOrder", defaultAxisOrder(rank));
-            gd.addCheckbox("ApplyLUT", false);
-
-            gd.showDialog();
-            if (gd.wasCanceled()) return;
-
-            String datasetName = Hdf5Utils.parseDataset(gd.getNextChoice());
-            rank = datasets.get(datasetName).getRank();
-            String axisOrder = gd.getNextString();
-            boolean applyLUT = gd.getNextBoolean();
-            if (isValidAxisOrder(rank, axisOrder)) {
-                loadDataset(hdf5FilePath, datasetName, axisOrder);
-                if (applyLUT) {
-                    DisplayUtils.applyGlasbeyLUT();
-                }
+        Hdf5DataSetIndex index = Hdf5DataSetIndex.forFile(hdf5FilePath);
+        List<String> datasets = index.getDataSets();
+        if (datasets.isEmpty()) {
+            IJ.error("No datasets found in " + hdf5FilePath);
+            return;
+        }
+        // describing a dataset reads its metadata, so files with many datasets only list their paths
+        Map<String, HDF5DataSetInformation> infos = datasets.size() <= MAX_DESCRIBED_DATASETS
+                ? index.getDataSetInformation(datasets) : Collections.emptyMap();
+        List<String> choices = datasets.stream()
+                .map(path -> infos.containsKey(path) ? Hdf5Utils.dropdownName(path, infos.get(path)) : path)
+                .collect(Collectors.toList());
+
+        GenericDialog gd = new GenericDialog("Select dataset name and axis order");
+        String firstChoice = choices.get(0);
+        gd.addChoice("DatasetName", choices.toArray(new String[0]), firstChoice);
+        int rank = index.getDataSetInformation(datasets.get(0)).getRank();
+        gd.addStringField("AxisOrder", defaultAxisOrder(rank));
+        gd.addCheckbox("ApplyLUT", false);
+        gd.addCheckbox("LazyLoading", false);
+        gd.addStringField("Crop", "", 30);
+        gd.addMessage("Crop: inclusive ranges of the imported XYCZT image, e.g. 'x:0-511 y:0-511 z:10-19'.\n" +
+                "Leave empty to import the whole dataset.");
+        gd.addNumericField("PreviewStep", 1, 0);
+        gd.addMessage("PreviewStep: import only every n-th pixel along x, y and z for a quick look in less memory (1 = full resolution).");
+
+        gd.showDialog();
+        if (gd.wasCanceled()) return;
+
+        String datasetName = Hdf5Utils.parseDataset(gd.getNextChoice());
+        rank = index.getDataSetInformation(datasetName).getRank();
+        String axisOrder = gd.getNextString();
+        boolean applyLUT = gd.getNextBoolean();
+        boolean lazyLoading = gd.getNextBoolean();
+        String crop = gd.getNextString();
+        int previewStep = Math.max(1, (int) gd.getNextNumber());
+        if (isValidAxisOrder(rank, axisOrder)) {
+            loadDataset(hdf5FilePath, datasetName, axisOrder, lazyLoading, crop, previewStep);
+            if (applyLUT && !uiService.isHeadless()) {
+                DisplayUtils.applyGlasbeyLUT();
             }
         }
         logService.info("Done loading HDF5 file!");
@@ -88,7 +115,8 @@ public class IlastikImportCommand implements Command {
         }
     }
 
-    private <T extends RealType<T> & NativeType<T>> void loadDataset(String hdf5FilePath, String datasetName, String axisOrder) {
+    private <T extends RealType<T> & NativeType<T>> void loadDataset(String hdf5FilePath, String datasetName, String axisOrder,
+                                                                     boolean lazyLoading, String crop, int previewStep) {
         assert hdf5FilePath != null;
         assert datasetName != null;
         assert axisOrder != null;
@@ -96,36 +124,30 @@ public class IlastikImportCommand implements Command {
 
         Instant start = Instant.now();
 
-        ImgPlus<T> imgPlus = new Hdf5DataSetReader<T>(hdf5FilePath, datasetName,
-                axisOrder, logService, statusService).read();
-        ImageJFunctions.show(imgPlus);
+        Hdf5DataSetReader<T> reader = new Hdf5DataSetReader<>(hdf5FilePath, datasetName,
+                axisOrder, logService, statusService);
+        ImgPlus<T> imgPlus;
+        if (crop.trim().isEmpty() && previewStep == 1) {
+            // lazy loading only reads the blocks that are actually displayed
+            imgPlus = lazyLoading ? reader.readLazy() : reader.read();
+        } else {
+            if (lazyLoading) {
+                logService.warn("Lazy loading is not available for cropped or preview imports, reading eagerly");
+            }
+            long[] steps = {previewStep, previewStep, 1, previewStep, 1};
+            imgPlus = reader.read(Hdf5Utils.parseInterval(crop, reader.getImageDimensions()), steps);
+        }
+        dataset = datasetService.create(imgPlus);
+        if (!uiService.isHeadless()) {
+            // shown right away for the LUT, the output is then not shown a second time
+            uiService.show(dataset);
+        }
 
         Instant finish = Instant.now();
         long timeElapsed = Duration.between(start, finish).toMillis();
         logService.info("Loading HDF5 dataset took: " + timeElapsed);
     }
 
-    private Map<String, HDF5DataSetInformation> findAvailableDatasets(IHDF5Reader reader, String path) {
-        HDF5LinkInformation link = reader.object().getLinkInformation(path);
-        List<HDF5LinkInformation> members = reader.object().getGroupMemberInformation(link.getPath(), true);
-
-        Map<String, HDF5DataSetInformation> result = new LinkedHashMap<>();
-        for (HDF5LinkInformation info : members) {
-            logService.info(info.getPath() + ": " + info.getType());
-            switch (info.getType()) {
-                case DATASET:
-                    result.put(info.getPath(), reader.object().getDataSetInformation(info.getPath()));
-                    break;
-                case GROUP:
-                    result.putAll(findAvailableDatasets(reader, info.getPath()));
-                    break;
-            }
-        }
-
-        return result;
-    }
-
-
     private boolean isValidAxisOrder(int rank, String dimensionOrder) {
         if (dimensionOrder.length() != rank) {
             IJ.error(String.format("Incorrect axis order '%s' for dataset of rank %s", dimensionOrder, rank));
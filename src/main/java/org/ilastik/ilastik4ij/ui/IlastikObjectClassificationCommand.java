@@ -69,6 +69,11 @@ public class IlastikObjectClassificationCommand implements Command {
 
     private void runClassification() throws IOException {
         final ObjectClassification objectClassification = new ObjectClassification(ilastikOptions.getExecutableFile(), projectFileName, logService, statusService, ilastikOptions.getNumThreads(), ilastikOptions.getMaxRamMb());
+        objectClassification.setWorker(ilastikOptions.getWorkerExecutableFile(), ilastikOptions.getWorkerIdleTimeoutSeconds(),
+                ilastikOptions.getWorkerJobTimeoutMinutes());
+        objectClassification.setScratchDirectory(ilastikOptions.getScratchDirectory());
+        objectClassification.setPassThroughHdf5(ilastikOptions.isPassThroughHdf5());
+        objectClassification.setPredictionCache(ilastikOptions.getPredictionCacheDirectory(), ilastikOptions.getPredictionCacheMaxSizeMb());
 
         final PixelPredictionType secondInputImageType = PixelPredictionType.valueOf(secondInputType);
 
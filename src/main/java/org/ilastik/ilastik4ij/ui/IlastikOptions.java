@@ -29,6 +29,36 @@ public class IlastikOptions extends OptionsPlugin {
     @Parameter(min = "256", label = "Maximum amount of RAM (in MB) that ilastik is allowed to use.")
     private int maxRamMb = 4096;
 
+    @Parameter(min = "1", label = "Number of ilastik processes classifying blocks at the same time,\n" +
+            "sharing the threads and RAM above")
+    private int numProcesses = 1;
+
+    @Parameter(required = false, label = "Directory for the files handed to ilastik. Empty for the default temp directory,\n" +
+            "'auto' to use the RAM disk /dev/shm when it has room next to the memory of Fiji and ilastik")
+    private String scratchDirectory = "";
+
+    @Parameter(label = "Pass images opened with Import HDF5 or read by scripts to ilastik without copying them.\n" +
+            "Only enable if the images are not edited before running a workflow on them")
+    private boolean passThroughHdf5 = false;
+
+    @Parameter(required = false, style = "directory", label = "Optional directory storing ilastik outputs for reuse " +
+            "when the same project runs on the same images again.\nLeave empty to disable")
+    private File predictionCacheDirectory;
+
+    @Parameter(min = "1", label = "Maximum size of the stored ilastik outputs (in MB)")
+    private int predictionCacheMaxSizeMb = 10240;
+
+    @Parameter(required = false, label = "Optional ilastik worker executable that keeps the project loaded between calls.\n" +
+            "Leave empty to start ilastik for every call")
+    private File workerExecutableFile;
+
+    @Parameter(min = "1", label = "Seconds after which an idle ilastik worker is stopped")
+    private int workerIdleTimeoutSeconds = 300;
+
+    @Parameter(min = "0", label = "Minutes after which a hung ilastik worker job is aborted and the worker restarted.\n" +
+            "0 means no limit")
+    private int workerJobTimeoutMinutes = 120;
+
     public File getExecutableFile() {
         return executableFile;
     }
@@ -41,6 +71,38 @@ public class IlastikOptions extends OptionsPlugin {
         return numThreads;
     }
 
+    public int getNumProcesses() {
+        return numProcesses;
+    }
+
+    public String getScratchDirectory() {
+        return scratchDirectory;
+    }
+
+    public boolean isPassThroughHdf5() {
+        return passThroughHdf5;
+    }
+
+    public File getPredictionCacheDirectory() {
+        return predictionCacheDirectory;
+    }
+
+    public int getPredictionCacheMaxSizeMb() {
+        return predictionCacheMaxSizeMb;
+    }
+
+    public File getWorkerExecutableFile() {
+        return workerExecutableFile;
+    }
+
+    public int getWorkerIdleTimeoutSeconds() {
+        return workerIdleTimeoutSeconds;
+    }
+
+    public int getWorkerJobTimeoutMinutes() {
+        return workerJobTimeoutMinutes;
+    }
+
     public void setExecutableFile(File executableFile) {
         this.executableFile = executableFile;
     }
@@ -52,4 +114,36 @@ public class IlastikOptions extends OptionsPlugin {
     public void setMaxRamMb(int maxRamMb) {
         this.maxRamMb = maxRamMb;
     }
+
+    public void setNumProcesses(int numProcesses) {
+        this.numProcesses = numProcesses;
+    }
+
+    public void setScratchDirectory(String scratchDirectory) {
+        this.scratchDirectory = scratchDirectory;
+    }
+
+    public void setPassThroughHdf5(boolean passThroughHdf5) {
+        this.passThroughHdf5 = passThroughHdf5;
+    }
+
+    public void setPredictionCacheDirectory(File predictionCacheDirectory) {
+        this.predictionCacheDirectory = predictionCacheDirectory;
+    }
+
+    public void setPredictionCacheMaxSizeMb(int predictionCacheMaxSizeMb) {
+        this.predictionCacheMaxSizeMb = predictionCacheMaxSizeMb;
+    }
+
+    public void setWorkerExecutableFile(File workerExecutableFile) {
+        this.workerExecutableFile = workerExecutableFile;
+    }
+
+    public void setWorkerIdleTimeoutSeconds(int workerIdleTimeoutSeconds) {
+        this.workerIdleTimeoutSeconds = workerIdleTimeoutSeconds;
+    }
+
+    public void setWorkerJobTimeoutMinutes(int workerJobTimeoutMinutes) {
+        this.workerJobTimeoutMinutes = workerJobTimeoutMinutes;
+    }
 }
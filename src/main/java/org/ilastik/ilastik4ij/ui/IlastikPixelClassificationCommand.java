@@ -3,6 +3,7 @@ package org.ilastik.ilastik4ij.ui;
 import net.imagej.Dataset;
 import net.imagej.ImgPlus;
 import net.imglib2.type.NativeType;
+import org.ilastik.ilastik4ij.executors.IlastikProcessPool;
 import org.ilastik.ilastik4ij.executors.PixelClassification;
 import org.scijava.ItemIO;
 import org.scijava.app.StatusService;
@@ -42,6 +43,12 @@ public class IlastikPixelClassificationCommand implements Command {
     @Parameter(label = "Output type", choices = {UiConstants.PIXEL_PREDICTION_TYPE_PROBABILITIES, UiConstants.PIXEL_PREDICTION_TYPE_SEGMENTATION}, style = "radioButtonHorizontal")
     public String pixelClassificationType = UiConstants.PIXEL_PREDICTION_TYPE_PROBABILITIES;
 
+    @Parameter(label = "Block size for images larger than RAM (0 to process the whole image at once)", min = "0")
+    public int blockSize = 0;
+
+    @Parameter(label = "Halo around blocks, should cover the largest feature scale", min = "0")
+    public int halo = 32;
+
     @Parameter(type = ItemIO.OUTPUT)
     private ImgPlus<? extends NativeType<?>> predictions;
 
@@ -67,9 +74,24 @@ public class IlastikPixelClassificationCommand implements Command {
     private void runClassification() throws IOException {
         final PixelClassification pixelClassification = new PixelClassification(ilastikOptions.getExecutableFile(),
                 projectFileName, logService, statusService, ilastikOptions.getNumThreads(), ilastikOptions.getMaxRamMb());
+        pixelClassification.setWorker(ilastikOptions.getWorkerExecutableFile(), ilastikOptions.getWorkerIdleTimeoutSeconds(),
+                ilastikOptions.getWorkerJobTimeoutMinutes());
+        pixelClassification.setScratchDirectory(ilastikOptions.getScratchDirectory());
+        pixelClassification.setPassThroughHdf5(ilastikOptions.isPassThroughHdf5());
+        pixelClassification.setPredictionCache(ilastikOptions.getPredictionCacheDirectory(), ilastikOptions.getPredictionCacheMaxSizeMb());
 
         PixelPredictionType pixelPredictionType = PixelPredictionType.valueOf(pixelClassificationType);
-        this.predictions = pixelClassification.classifyPixels(inputImage.getImgPlus(), pixelPredictionType);
+        if (blockSize > 0) {
+            // blocks are the only batches of this command, so only they are split over several processes
+            try (IlastikProcessPool processPool = ilastikOptions.getNumProcesses() > 1 ? new IlastikProcessPool(
+                    ilastikOptions.getNumProcesses(), ilastikOptions.getNumThreads(), ilastikOptions.getMaxRamMb()) : null) {
+                pixelClassification.setProcessPool(processPool);
+                this.predictions = pixelClassification.classifyPixelsTiled(inputImage.getImgPlus(), pixelPredictionType,
+                        blockSize, halo);
+            }
+        } else {
+            this.predictions = pixelClassification.classifyPixels(inputImage.getImgPlus(), pixelPredictionType);
+        }
 
         DisplayUtils.showOutput(uiService, predictions, pixelPredictionType);
     }
@@ -70,6 +70,11 @@ public class IlastikTrackingCommand implements Command {
     private void runTracking() throws IOException {
         final Tracking tracking = new Tracking(ilastikOptions.getExecutableFile(), projectFileName, logService,
                 statusService, ilastikOptions.getNumThreads(), ilastikOptions.getMaxRamMb());
+        tracking.setWorker(ilastikOptions.getWorkerExecutableFile(), ilastikOptions.getWorkerIdleTimeoutSeconds(),
+                ilastikOptions.getWorkerJobTimeoutMinutes());
+        tracking.setScratchDirectory(ilastikOptions.getScratchDirectory());
+        tracking.setPassThroughHdf5(ilastikOptions.isPassThroughHdf5());
+        tracking.setPredictionCache(ilastikOptions.getPredictionCacheDirectory(), ilastikOptions.getPredictionCacheMaxSizeMb());
 
         this.predictions = tracking.trackObjects(inputImage.getImgPlus(), inputProbOrSegImage.getImgPlus(),
                 PixelPredictionType.valueOf(secondInputType));
@@ -2,21 +2,32 @@ package org.ilastik.ilastik4ij.util;
 
 import ch.systemsx.cisd.hdf5.HDF5DataSetInformation;
 import ch.systemsx.cisd.hdf5.HDF5DataTypeInformation;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
 import net.imglib2.type.NativeType;
 import net.imglib2.type.Type;
+import net.imglib2.type.numeric.integer.ByteType;
+import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.type.numeric.integer.LongType;
+import net.imglib2.type.numeric.integer.ShortType;
 import net.imglib2.type.numeric.integer.UnsignedByteType;
 import net.imglib2.type.numeric.integer.UnsignedIntType;
 import net.imglib2.type.numeric.integer.UnsignedLongType;
 import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.DoubleType;
 import net.imglib2.type.numeric.real.FloatType;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 
 public class Hdf5Utils {
+    // axis order of the images created by Hdf5DataSetReader
+    public static final String IMAGE_AXES = "xyczt";
     private static final Map<String, NativeType<?>> H5_TO_IMGLIB2_TYPE;
 
     static {
@@ -26,11 +37,17 @@ public class Hdf5Utils {
         map.put("uint16", new UnsignedShortType());
         map.put("uint32", new UnsignedIntType());
         map.put("uint64", new UnsignedLongType());
+        map.put("int8", new ByteType());
+        map.put("int16", new ShortType());
+        map.put("int32", new IntType());
+        map.put("int64", new LongType());
+        map.put("float64", new DoubleType());
         H5_TO_IMGLIB2_TYPE = Collections.unmodifiableMap(map);
     }
 
     private static final long BLOCK_SIZE_2D = 128;
     private static final long BLOCK_SIZE_3D = 32;
+    private static final long MAX_SLAB_ELEMENTS = 1L << 24;
 
     public static <T extends NativeType<T>> T getNativeType(String dtype) {
         @SuppressWarnings("unchecked")
@@ -70,6 +87,85 @@ public class Hdf5Utils {
         return result;
     }
 
+    /**
+     * Chunk shape that holds whole XY planes, for datasets that are mostly read plane by plane
+     * (e.g. browsed in Fiji). Planes larger than {@code MAX_SLAB_ELEMENTS} are split along y.
+     */
+    public static int[] planeChunkShape(long[] datasetDims) {
+        // expect rank 5 dims with tzyxc axis order
+        long rows = Math.max(1, Math.min(datasetDims[2], MAX_SLAB_ELEMENTS / Math.max(1, datasetDims[3])));
+        return new int[]{1, 1, (int) rows, (int) datasetDims[3], 1};
+    }
+
+    /**
+     * Parses a chunk shape specification for a tzyxc dataset: "auto" (or empty) for the blocks
+     * of {@link #blockSize(long[])}, which suit ilastik's blockwise access, "planes" for
+     * {@link #planeChunkShape(long[])}, or five comma separated extents in tzyxc order.
+     * Extents are clamped to the dataset dimensions.
+     */
+    public static int[] chunkShape(String spec, long[] datasetDims) {
+        String trimmed = spec == null ? "" : spec.trim().toLowerCase();
+        if (trimmed.isEmpty() || trimmed.equals("auto")) {
+            return blockSize(datasetDims);
+        }
+        if (trimmed.equals("planes")) {
+            return planeChunkShape(datasetDims);
+        }
+
+        String[] tokens = trimmed.split("[\\s,x]+");
+        if (tokens.length != datasetDims.length) {
+            throw new IllegalArgumentException("Invalid chunk shape '" + spec + "', expected 'auto', 'planes' or 5 tzyxc extents such as '1,32,32,32,1'");
+        }
+        int[] result = new int[tokens.length];
+        for (int i = 0; i < tokens.length; i++) {
+            int extent = Integer.parseInt(tokens[i]);
+            if (extent < 1) {
+                throw new IllegalArgumentException("Chunk extents must be positive: " + spec);
+            }
+            result[i] = (int) Math.min(extent, Math.max(1, datasetDims[i]));
+        }
+        return result;
+    }
+
+    /**
+     * Splits a tzyxc dataset into slabs that are aligned to the chunk grid and cover whole chunks only,
+     * so that writing the slabs one by one compresses every chunk exactly once. A slab is one chunk
+     * deep in t, z, y and c, and spans as much of x as fits into {@code MAX_SLAB_ELEMENTS}.
+     *
+     * @return the slabs in tzyxc dataset coordinates
+     */
+    public static List<Interval> getChunkAlignedSlabs(long[] datasetDims, int[] blockSize) {
+        // expect rank 5 dims with tzyxc axis order
+        long[] slabSize = new long[datasetDims.length];
+        for (int i = 0; i < datasetDims.length; i++) {
+            slabSize[i] = Math.min(blockSize[i], datasetDims[i]);
+        }
+        long rowElements = slabSize[0] * slabSize[1] * slabSize[2] * slabSize[4];
+        if (rowElements * datasetDims[3] <= MAX_SLAB_ELEMENTS) {
+            slabSize[3] = datasetDims[3];
+        } else {
+            slabSize[3] = Math.max(1, MAX_SLAB_ELEMENTS / rowElements / slabSize[3]) * slabSize[3];
+        }
+
+        List<Interval> result = new ArrayList<>();
+        long[] min = new long[datasetDims.length];
+        long[] max = new long[datasetDims.length];
+        while (true) {
+            for (int i = 0; i < datasetDims.length; i++) {
+                max[i] = Math.min(min[i] + slabSize[i], datasetDims[i]) - 1;
+            }
+            result.add(new FinalInterval(min.clone(), max.clone()));
+
+            int i = datasetDims.length - 1;
+            for (; i >= 0; i--) {
+                min[i] += slabSize[i];
+                if (min[i] < datasetDims[i]) break;
+                min[i] = 0;
+            }
+            if (i < 0) return result;
+        }
+    }
+
     public static long[] getXYSliceDims(long[] datasetDims) {
         // expect rank 5 dims with tzyxc axis order
         long[] result = datasetDims.clone();
@@ -114,4 +210,36 @@ public class Hdf5Utils {
         }
         return type;
     }
+
+    /**
+     * Parses a crop specification such as "x:0-511 y:0-511 z:10-19" into an XYCZT interval.
+     * Ranges are inclusive, axes that are not mentioned keep their full extent.
+     *
+     * @param spec crop specification, an empty string selects the whole image
+     * @param dims image dimensions in XYCZT order
+     * @return the interval, or null if spec is empty
+     */
+    public static Interval parseInterval(String spec, long[] dims) {
+        if (spec == null || spec.trim().isEmpty()) {
+            return null;
+        }
+
+        long[] min = new long[dims.length];
+        long[] max = new long[dims.length];
+        for (int d = 0; d < dims.length; d++) {
+            max[d] = dims[d] - 1;
+        }
+
+        for (String token : spec.trim().toLowerCase().split("[\\s,;]+")) {
+            String[] axisAndRange = token.split(":");
+            String[] range = axisAndRange.length == 2 ? axisAndRange[1].split("-") : new String[0];
+            int axis = axisAndRange[0].length() == 1 ? IMAGE_AXES.indexOf(axisAndRange[0].charAt(0)) : -1;
+            if (axis < 0 || range.length != 2) {
+                throw new IllegalArgumentException("Invalid crop '" + token + "', expected e.g. 'x:0-511'");
+            }
+            min[axis] = Long.parseLong(range[0].trim());
+            max[axis] = Long.parseLong(range[1].trim());
+        }
+        return new FinalInterval(min, max);
+    }
 }
@@ -4,10 +4,22 @@ import org.scijava.log.LogService;
 
 import java.io.*;
 import java.nio.charset.Charset;
+import java.nio.file.Files;
 
 public class IOUtils {
+    // scratch setting that picks the RAM disk when it has room
+    public static final String AUTO_SCRATCH = "auto";
+    private static final File RAM_DISK = new File("/dev/shm");
+
     public static String getTemporaryFileName(String extension) throws IOException {
-        File tmpFile = File.createTempFile("ilastik4j", extension, null);
+        return getTemporaryFileName(extension, null);
+    }
+
+    /**
+     * @param directory directory of the file, or null for the default temp directory
+     */
+    public static String getTemporaryFileName(String extension, File directory) throws IOException {
+        File tmpFile = File.createTempFile("ilastik4j", extension, directory);
         try {
             return tmpFile.getAbsolutePath();
         } finally {
@@ -15,6 +27,58 @@ public class IOUtils {
         }
     }
 
+    /**
+     * @param directory parent of the new directory, or null for the default temp directory
+     */
+    public static File createTemporaryDirectory(File directory) throws IOException {
+        return directory == null
+                ? Files.createTempDirectory("ilastik4j").toFile()
+                : Files.createTempDirectory(directory.toPath(), "ilastik4j").toFile();
+    }
+
+    /**
+     * Deletes the directory with everything in it, ignoring files that cannot be deleted.
+     */
+    public static void deleteRecursively(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isDirectory() && !Files.isSymbolicLink(file.toPath())) {
+                    deleteRecursively(file);
+                } else {
+                    file.delete();
+                }
+            }
+        }
+        directory.delete();
+    }
+
+    /**
+     * @param scratch       directory for staged files, empty or null for the default temp directory, or
+     *                      {@value #AUTO_SCRATCH} for the RAM disk /dev/shm if it has room for the files
+     * @param requiredBytes estimated size of the files
+     * @param reservedBytes memory the RAM disk must leave free for other uses, e.g. the RAM budget of ilastik
+     * @return the scratch directory, or null for the default temp directory
+     */
+    public static File getScratchDirectory(String scratch, long requiredBytes, long reservedBytes) {
+        if (scratch == null || scratch.trim().isEmpty()) {
+            return null;
+        }
+        if (scratch.trim().equalsIgnoreCase(AUTO_SCRATCH)) {
+            // the RAM disk shares memory with Fiji and ilastik, so only use it if the files fit next to both
+            long reserved = reservedBytes + Runtime.getRuntime().maxMemory();
+            if (RAM_DISK.isDirectory() && RAM_DISK.canWrite() && RAM_DISK.getUsableSpace() - reserved >= requiredBytes) {
+                return RAM_DISK;
+            }
+            return null;
+        }
+        File directory = new File(scratch.trim());
+        if (!directory.isDirectory()) {
+            throw new IllegalArgumentException("Scratch directory does not exist: " + directory);
+        }
+        return directory;
+    }
+
     public static void redirectOutputToLogService(final InputStream in, final LogService logService, final Boolean isErrorStream) {
         new Thread(() -> {
 
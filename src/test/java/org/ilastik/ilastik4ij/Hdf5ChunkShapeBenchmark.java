@@ -0,0 +1,126 @@
+package org.ilastik.ilastik4ij;
+
+import ch.systemsx.cisd.hdf5.HDF5Factory;
+import ch.systemsx.cisd.hdf5.IHDF5Reader;
+import net.imagej.ImageJ;
+import net.imagej.ImgPlus;
+import net.imagej.axis.Axes;
+import net.imagej.axis.AxisType;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import org.ilastik.ilastik4ij.hdf5.Hdf5DataSetWriter;
+import org.ilastik.ilastik4ij.util.Hdf5Utils;
+import org.ilastik.ilastik4ij.util.IOUtils;
+import org.scijava.log.LogService;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Writes a synthetic uint16 volume with several chunk shapes and measures two access patterns:
+ * ilastik's blockwise reads of 64x64x64 blocks, and Fiji's plane by plane reads. Recommends the
+ * chunk shape that is fastest for the requested pattern.
+ * <p>
+ * Usage: Hdf5ChunkShapeBenchmark [blocks|planes] [z y x], defaults to blocks on a (128, 512, 512) volume.
+ */
+public class Hdf5ChunkShapeBenchmark {
+    private static final String DATASET = "data";
+    private static final int READ_BLOCK = 64;
+    private static final int COMPRESSION_LEVEL = 1;
+
+    public static void main(String[] args) throws IOException {
+        final String pattern = args.length > 0 ? args[0] : "blocks";
+        if (!pattern.equals("blocks") && !pattern.equals("planes")) {
+            throw new IllegalArgumentException("Access pattern must be 'blocks' or 'planes': " + pattern);
+        }
+        final long[] zyx = args.length == 4
+                ? new long[]{Long.parseLong(args[1]), Long.parseLong(args[2]), Long.parseLong(args[3])}
+                : new long[]{128, 512, 512};
+        final long[] datasetDims = {1, zyx[0], zyx[1], zyx[2], 1};
+
+        final Map<String, int[]> candidates = new LinkedHashMap<>();
+        candidates.put("auto", Hdf5Utils.chunkShape("auto", datasetDims));
+        candidates.put("planes", Hdf5Utils.chunkShape("planes", datasetDims));
+        candidates.put("thin blocks", Hdf5Utils.chunkShape("1,8,128,128,1", datasetDims));
+        candidates.put("large blocks", Hdf5Utils.chunkShape("1,64,64,64,1", datasetDims));
+
+        final ImageJ ij = new ImageJ();
+        final LogService log = ij.log();
+        final File h5File = new File(IOUtils.getTemporaryFileName("_chunks.h5"));
+        try {
+            final ImgPlus<UnsignedShortType> image = createImage(zyx);
+            String best = null;
+            long bestTime = Long.MAX_VALUE;
+            for (Map.Entry<String, int[]> candidate : candidates.entrySet()) {
+                final Hdf5DataSetWriter<UnsignedShortType> writer = new Hdf5DataSetWriter<>(image,
+                        h5File.getAbsolutePath(), DATASET, COMPRESSION_LEVEL, log, null);
+                writer.setChunkShape(candidate.getValue());
+                long start = System.nanoTime();
+                writer.write();
+                final long write = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                readBlocks(h5File.getAbsolutePath(), datasetDims);
+                final long blocks = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                readPlanes(h5File.getAbsolutePath(), datasetDims);
+                final long planes = System.nanoTime() - start;
+
+                log.info(String.format("%-12s chunks %s: write %d ms, blockwise read %d ms, plane read %d ms, file %d MB",
+                        candidate.getKey(), Arrays.toString(candidate.getValue()), write / 1000000,
+                        blocks / 1000000, planes / 1000000, h5File.length() >> 20));
+
+                final long time = pattern.equals("blocks") ? blocks : planes;
+                if (time < bestTime) {
+                    bestTime = time;
+                    best = candidate.getKey();
+                }
+                h5File.delete();
+            }
+            log.info(String.format("Recommended chunk shape for %s access: %s %s", pattern, best,
+                    Arrays.toString(candidates.get(best))));
+        } finally {
+            h5File.delete();
+            ij.context().dispose();
+        }
+    }
+
+    private static ImgPlus<UnsignedShortType> createImage(long[] zyx) {
+        final Img<UnsignedShortType> img = ArrayImgs.unsignedShorts(zyx[2], zyx[1], zyx[0]);
+        int i = 0;
+        for (UnsignedShortType pixel : img) {
+            // smooth ramps with some noise, compresses roughly like microscopy data
+            pixel.set((i / 7 + (i * 31 % 13)) & 0xffff);
+            i++;
+        }
+        return new ImgPlus<>(img, "benchmark", new AxisType[]{Axes.X, Axes.Y, Axes.Z});
+    }
+
+    private static void readBlocks(String path, long[] dims) {
+        try (IHDF5Reader reader = HDF5Factory.openForReading(path)) {
+            for (long z = 0; z < dims[1]; z += READ_BLOCK) {
+                for (long y = 0; y < dims[2]; y += READ_BLOCK) {
+                    for (long x = 0; x < dims[3]; x += READ_BLOCK) {
+                        int[] extent = {1, (int) Math.min(READ_BLOCK, dims[1] - z),
+                                (int) Math.min(READ_BLOCK, dims[2] - y), (int) Math.min(READ_BLOCK, dims[3] - x), 1};
+                        reader.uint16().readMDArrayBlockWithOffset(DATASET, extent, new long[]{0, z, y, x, 0});
+                    }
+                }
+            }
+        }
+    }
+
+    private static void readPlanes(String path, long[] dims) {
+        try (IHDF5Reader reader = HDF5Factory.openForReading(path)) {
+            int[] extent = {1, 1, (int) dims[2], (int) dims[3], 1};
+            for (long z = 0; z < dims[1]; z++) {
+                reader.uint16().readMDArrayBlockWithOffset(DATASET, extent, new long[]{0, z, 0, 0, 0});
+            }
+        }
+    }
+}
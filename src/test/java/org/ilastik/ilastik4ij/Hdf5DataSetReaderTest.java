@@ -1,27 +1,47 @@
 package org.ilastik.ilastik4ij;
 
+import ch.systemsx.cisd.base.mdarray.MDByteArray;
+import ch.systemsx.cisd.hdf5.HDF5Factory;
+import ch.systemsx.cisd.hdf5.HDF5IntStorageFeatures;
+import ch.systemsx.cisd.hdf5.IHDF5Reader;
+import ch.systemsx.cisd.hdf5.IHDF5Writer;
 import io.scif.services.DatasetIOService;
 import net.imagej.Dataset;
 import net.imagej.ImageJ;
 import net.imagej.ImgPlus;
 import net.imagej.axis.Axes;
 import net.imagej.axis.AxisType;
+import net.imglib2.Cursor;
+import net.imglib2.Interval;
 import net.imglib2.RandomAccess;
 import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.cache.img.DiskCachedCellImg;
 import net.imglib2.converter.Converters;
 import net.imglib2.converter.RealARGBConverter;
 import net.imglib2.converter.RealFloatConverter;
 import net.imglib2.converter.RealUnsignedShortConverter;
 import net.imglib2.img.Img;
 import net.imglib2.img.ImgView;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
 import net.imglib2.type.NativeType;
 import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.ShortType;
 import net.imglib2.type.numeric.integer.UnsignedByteType;
 import net.imglib2.type.numeric.integer.UnsignedIntType;
 import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.DoubleType;
 import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+import org.ilastik.ilastik4ij.hdf5.Hdf5AppendableWriter;
+import org.ilastik.ilastik4ij.hdf5.Hdf5DataSetConfig;
+import org.ilastik.ilastik4ij.hdf5.Hdf5DataSetIndex;
 import org.ilastik.ilastik4ij.hdf5.Hdf5DataSetReader;
 import org.ilastik.ilastik4ij.hdf5.Hdf5DataSetWriter;
+import org.ilastik.ilastik4ij.hdf5.Hdf5WriteQueue;
+import org.ilastik.ilastik4ij.util.Hdf5Utils;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -32,9 +52,14 @@ import org.scijava.log.LogService;
 import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 
 public class Hdf5DataSetReaderTest {
@@ -126,6 +151,171 @@ public class Hdf5DataSetReaderTest {
         assertEquals("CHANNEL value should be 200", 200, f.get());
     }
 
+    /**
+     * Test of the source properties of imported images, of class Hdf5DataSetReader.
+     */
+    @Test
+    public void testReadSourceProperties() {
+        ImgPlus<UnsignedShortType> image = readFromHdf5(TEST_H5_RESOURCE, DATASET, "tzyxc", logService, statusService);
+        File file = new File(TEST_H5_RESOURCE).getAbsoluteFile();
+        assertEquals(file.getPath(), image.getProperties().get(Hdf5DataSetReader.FILE_PROPERTY));
+        assertEquals(DATASET, image.getProperties().get(Hdf5DataSetReader.DATASET_PROPERTY));
+        assertEquals("tzyxc", image.getProperties().get(Hdf5DataSetReader.AXES_PROPERTY));
+        assertEquals(file.lastModified(), image.getProperties().get(Hdf5DataSetReader.LAST_MODIFIED_PROPERTY));
+    }
+
+    /**
+     * Test of readLazy method, of class Hdf5DataSetReader.
+     */
+    @Test
+    public void testReadLazy() {
+        ImgPlus<UnsignedShortType> expected = readFromHdf5(TEST_H5_RESOURCE, DATASET, "tzyxc", logService, statusService);
+        ImgPlus<UnsignedShortType> image = new Hdf5DataSetReader<UnsignedShortType>(TEST_H5_RESOURCE, DATASET,
+                "tzyxc", logService, statusService).readLazy(4);
+        assertEquals("Bits should be 16", 16, image.getValidBits());
+        assertImagesEqual(expected, image);
+    }
+
+    /**
+     * Test of read method with several worker threads, of class Hdf5DataSetReader.
+     */
+    @Test
+    public void testReadMultiThreaded() {
+        Hdf5DataSetReader<UnsignedShortType> reader = new Hdf5DataSetReader<>(TEST_H5_RESOURCE, DATASET,
+                "tzyxc", logService, statusService);
+        reader.setNumThreads(1);
+        ImgPlus<UnsignedShortType> expected = reader.read();
+        reader.setNumThreads(4);
+        assertImagesEqual(expected, reader.read());
+    }
+
+    /**
+     * Test of read method with an interval, of class Hdf5DataSetReader.
+     */
+    @Test
+    public void testReadInterval() {
+        Hdf5DataSetReader<UnsignedShortType> reader = new Hdf5DataSetReader<>(TEST_H5_RESOURCE, DATASET,
+                "tzyxc", logService, statusService);
+        ImgPlus<UnsignedShortType> full = reader.read();
+        Interval interval = Intervals.createMinMax(1, 2, 1, 3, 4, 3, 4, 2, 5, 6);
+        ImgPlus<UnsignedShortType> image = reader.read(interval);
+        assertEquals("Bits should be 16", 16, image.getValidBits());
+        assertImagesEqual(Views.zeroMin(Views.interval(full, interval)), image);
+    }
+
+    /**
+     * Test of readDownsampled method, of class Hdf5DataSetReader.
+     */
+    @Test
+    public void testReadDownsampled() {
+        Hdf5DataSetReader<UnsignedShortType> reader = new Hdf5DataSetReader<>(TEST_H5_RESOURCE, DATASET,
+                "tzyxc", logService, statusService);
+        ImgPlus<UnsignedShortType> full = reader.read();
+        ImgPlus<UnsignedShortType> image = reader.readDownsampled(new long[]{2, 2, 1, 4, 3});
+        long[] dims = new long[5];
+        image.dimensions(dims);
+        assertArrayEquals("Dims should be sampled every step", new long[]{2, 3, 3, 2, 3}, dims);
+        assertImagesEqual(Views.subsample(full, 2, 2, 1, 4, 3), image);
+    }
+
+    /**
+     * Test of read method storing the image in a disk-cached cell image, of class Hdf5DataSetReader.
+     */
+    @Test
+    public void testReadDiskCached() {
+        Hdf5DataSetReader<UnsignedShortType> reader = new Hdf5DataSetReader<>(TEST_H5_RESOURCE, DATASET,
+                "tzyxc", logService, statusService);
+        ImgPlus<UnsignedShortType> expected = reader.read();
+        reader.setMaxMemoryFraction(0);
+        ImgPlus<UnsignedShortType> image = reader.read();
+        assertTrue("Image should be disk cached", image.getImg() instanceof DiskCachedCellImg);
+        assertImagesEqual(expected, image);
+    }
+
+    /**
+     * Test of selectContainer method, of class Hdf5DataSetReader.
+     */
+    @Test
+    public void testSelectContainer() {
+        long maxMemory = 8L << 30;
+        assertEquals(Hdf5DataSetReader.Container.ARRAY, Hdf5DataSetReader.selectContainer(
+                new long[]{512, 512, 1, 10, 1}, 2, new int[]{64, 64, 1, 10, 1}, maxMemory, 0.5));
+        assertEquals(Hdf5DataSetReader.Container.PLANAR, Hdf5DataSetReader.selectContainer(
+                new long[]{2048, 2048, 1, 100, 1}, 4, new int[]{2048, 2048, 1, 1, 1}, maxMemory, 0.5));
+        assertEquals(Hdf5DataSetReader.Container.CELL, Hdf5DataSetReader.selectContainer(
+                new long[]{2048, 2048, 1, 100, 1}, 4, new int[]{64, 64, 1, 64, 1}, maxMemory, 0.5));
+        assertEquals(Hdf5DataSetReader.Container.DISK_CACHED, Hdf5DataSetReader.selectContainer(
+                new long[]{2048, 2048, 1, 1000, 1}, 4, new int[]{64, 64, 1, 64, 1}, maxMemory, 0.5));
+    }
+
+    /**
+     * Test of getMaxCachedCells method, of class Hdf5DataSetReader.
+     */
+    @Test
+    public void testGetMaxCachedCells() {
+        long maxMemory = 8L << 30;
+        assertEquals("Cells should fill the fraction of the heap", 4096, Hdf5DataSetReader.getMaxCachedCells(
+                new int[]{64, 64, 1, 64, 1}, 4, maxMemory, 0.5));
+        assertEquals("Large cells should leave room for fewer of them", 256, Hdf5DataSetReader.getMaxCachedCells(
+                new int[]{2048, 2048, 1, 1, 1}, 4, maxMemory, 0.5));
+        assertEquals("At least one cell should be cached", 1, Hdf5DataSetReader.getMaxCachedCells(
+                new int[]{2048, 2048, 1, 1000, 1}, 4, maxMemory, 0.5));
+    }
+
+    /**
+     * Test of readLazy method with the default cell limit, of class Hdf5DataSetReader.
+     */
+    @Test
+    public void testReadLazyWithMemoryLimit() {
+        ImgPlus<UnsignedShortType> expected = readFromHdf5(TEST_H5_RESOURCE, DATASET, "tzyxc", logService, statusService);
+        ImgPlus<UnsignedShortType> image = new Hdf5DataSetReader<UnsignedShortType>(TEST_H5_RESOURCE, DATASET,
+                "tzyxc", logService, statusService).readLazy();
+        assertImagesEqual(expected, image);
+    }
+
+    /**
+     * Test of readInto method, of class Hdf5DataSetReader.
+     */
+    @Test
+    public void testReadInto() {
+        Hdf5DataSetReader<UnsignedShortType> reader = new Hdf5DataSetReader<>(TEST_H5_RESOURCE, DATASET,
+                "tzyxc", logService, statusService);
+        ImgPlus<UnsignedShortType> expected = reader.read();
+
+        // reusing the same buffer for a second read
+        Img<UnsignedShortType> buffer = ArrayImgs.unsignedShorts(4, 5, 3, 6, 7);
+        reader.readInto(buffer);
+        reader.readInto(buffer);
+        assertImagesEqual(expected, buffer);
+
+        // a view that is not zero-min is filled through a cursor
+        Img<UnsignedShortType> larger = ArrayImgs.unsignedShorts(6, 7, 3, 6, 7);
+        RandomAccessibleInterval<UnsignedShortType> view = Views.interval(larger, Intervals.createMinSize(1, 2, 0, 0, 0, 4, 5, 3, 6, 7));
+        reader.readInto(view);
+        assertImagesEqual(expected, view);
+    }
+
+    /**
+     * Test of readInto method with an image of the wrong type, of class Hdf5DataSetReader.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public void testReadIntoWrongType() {
+        Hdf5DataSetReader reader = new Hdf5DataSetReader<>(TEST_H5_RESOURCE, DATASET, "tzyxc", logService, statusService);
+        reader.readInto(ArrayImgs.floats(4, 5, 3, 6, 7));
+    }
+
+    /**
+     * Test of class Hdf5DataSetIndex.
+     */
+    @Test
+    public void testDataSetIndex() {
+        Hdf5DataSetIndex index = Hdf5DataSetIndex.forFile(TEST_H5_RESOURCE);
+        assertEquals(Collections.singletonList("/" + DATASET), index.getDataSets());
+        assertArrayEquals(new long[]{7, 6, 5, 4, 3}, index.getDataSetInformation("/" + DATASET).getDimensions());
+        assertSame("Index of an unchanged file should be cached", index, Hdf5DataSetIndex.forFile(TEST_H5_RESOURCE));
+    }
+
     /**
      * Test of write method, specifically for 8 bit UnsignedByteType type image, of class Hdf5DataSetReader.
      */
@@ -207,6 +397,73 @@ public class Hdf5DataSetReaderTest {
         assertEquals("Alpha channel should be set to 255.", valout.get(), 255);
     }
 
+    @Test
+    public void testWriteHDF5ARGBChannels() throws Exception {
+        String h5Path = testH5.getPath();
+        Img<ARGBType> img = ArrayImgs.argbs(37, 23, 5);
+        int i = 0;
+        for (ARGBType pixel : img) {
+            pixel.set(ARGBType.rgba(i % 256, (i * 3) % 256, (i * 7) % 256, 255 - i % 256));
+            i++;
+        }
+        ImgPlus<ARGBType> input = new ImgPlus<>(img, "", new AxisType[]{Axes.X, Axes.Y, Axes.Z});
+        new Hdf5DataSetWriter<>(input, h5Path, DATASET, 0, logService, statusService).write();
+
+        ImgPlus<UnsignedByteType> image = readFromHdf5(h5Path, DATASET, "tzyxc", logService, statusService);
+        assertEquals("DimC should be 4", 4, image.dimension(AXES.indexOf(Axes.CHANNEL)));
+        RandomAccess<UnsignedByteType> raiOut = image.randomAccess();
+        Cursor<ARGBType> cursor = img.localizingCursor();
+        while (cursor.hasNext()) {
+            int argb = cursor.next().get();
+            raiOut.setPosition(cursor.getLongPosition(0), AXES.indexOf(Axes.X));
+            raiOut.setPosition(cursor.getLongPosition(1), AXES.indexOf(Axes.Y));
+            raiOut.setPosition(cursor.getLongPosition(2), AXES.indexOf(Axes.Z));
+            int[] expected = {ARGBType.alpha(argb), ARGBType.red(argb), ARGBType.green(argb), ARGBType.blue(argb)};
+            for (int c = 0; c < expected.length; c++) {
+                raiOut.setPosition(c, AXES.indexOf(Axes.CHANNEL));
+                assertEquals("Channel " + c + " should hold the unpacked component", expected[c], raiOut.get().get());
+            }
+        }
+    }
+
+    @Test
+    public void testWriteHDF5ARGBRGBChannels() throws Exception {
+        String h5Path = testH5.getPath();
+        // an RGB image whose channels hold one component each, in the lowest byte
+        Img<ARGBType> img = ArrayImgs.argbs(13, 7, 3, 2);
+        Cursor<ARGBType> cursor = img.localizingCursor();
+        while (cursor.hasNext()) {
+            cursor.fwd();
+            int value = (int) (cursor.getLongPosition(0) * 17 + cursor.getLongPosition(1) * 5 + cursor.getLongPosition(2) * 3
+                    + cursor.getLongPosition(3)) % 256;
+            cursor.get().set(ARGBType.rgba(200, 100, value, 50));
+        }
+        ImgPlus<ARGBType> input = new ImgPlus<>(img, "", new AxisType[]{Axes.X, Axes.Y, Axes.CHANNEL, Axes.Z});
+        new Hdf5DataSetWriter<>(input, h5Path, DATASET, 0, logService, statusService).write();
+
+        ImgPlus<UnsignedByteType> image = readFromHdf5(h5Path, DATASET, "tzyxc", logService, statusService);
+        assertEquals("DimC should be 4", 4, image.dimension(AXES.indexOf(Axes.CHANNEL)));
+        RandomAccess<UnsignedByteType> raiOut = image.randomAccess();
+        cursor.reset();
+        while (cursor.hasNext()) {
+            int argb = cursor.next().get();
+            raiOut.setPosition(cursor.getLongPosition(0), AXES.indexOf(Axes.X));
+            raiOut.setPosition(cursor.getLongPosition(1), AXES.indexOf(Axes.Y));
+            raiOut.setPosition(cursor.getLongPosition(3), AXES.indexOf(Axes.Z));
+            raiOut.setPosition(0, AXES.indexOf(Axes.CHANNEL));
+            assertEquals("Alpha channel should be set to 255.", 255, raiOut.get().get());
+            raiOut.setPosition(cursor.getLongPosition(2) + 1, AXES.indexOf(Axes.CHANNEL));
+            assertEquals("Channel should hold the lowest byte of its pixels", ARGBType.blue(argb), raiOut.get().get());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWriteHDF5ARGBUnsupportedChannels() {
+        Img<ARGBType> img = ArrayImgs.argbs(13, 7, 2);
+        ImgPlus<ARGBType> input = new ImgPlus<>(img, "", new AxisType[]{Axes.X, Axes.Y, Axes.CHANNEL});
+        new Hdf5DataSetWriter<>(input, testH5.getPath(), DATASET, 0, logService, statusService).write();
+    }
+
     /**
      * Test of write method, specifically for 32 bit  Float type image, of class Hdf5DataSetReader.
      */
@@ -329,6 +586,288 @@ public class Hdf5DataSetReaderTest {
         assertEquals("Image content should be same.", valOut.get(), valIn.get());
     }
 
+    /**
+     * Test of write and read methods for signed 16 bit images, of classes Hdf5DataSetWriter and Hdf5DataSetReader.
+     */
+    @Test
+    public void testWriteHDF5SignedShort() {
+        Img<ShortType> img = ArrayImgs.shorts(4, 5, 2, 3, 2);
+        short value = Short.MIN_VALUE;
+        for (ShortType pixel : img) {
+            pixel.set(value);
+            value += 97;
+        }
+        assertRoundTrip(img, 16);
+    }
+
+    /**
+     * Test of write and read methods for 64 bit floating point images, of classes Hdf5DataSetWriter and Hdf5DataSetReader.
+     */
+    @Test
+    public void testWriteHDF5Double() {
+        Img<DoubleType> img = ArrayImgs.doubles(4, 5, 2, 3, 2);
+        double value = -1e300;
+        for (DoubleType pixel : img) {
+            pixel.set(value);
+            value /= -3.0;
+        }
+        assertRoundTrip(img, 64);
+    }
+
+    /**
+     * Test of write method for an image in CXY axis order, of class Hdf5DataSetWriter.
+     */
+    @Test
+    public void testWriteHDF5PermutedAxes() {
+        Img<FloatType> img = ArrayImgs.floats(3, 4, 5);
+        float value = 0;
+        for (FloatType pixel : img) {
+            pixel.set(value++);
+        }
+        ImgPlus<FloatType> imgPlus = new ImgPlus<>(img, "", new AxisType[]{Axes.CHANNEL, Axes.X, Axes.Y});
+        new Hdf5DataSetWriter<>(imgPlus, testH5.getPath(), DATASET, 0, logService, statusService).write();
+
+        ImgPlus<FloatType> image = readFromHdf5(testH5.getPath(), DATASET, "tzyxc", logService, statusService);
+        RandomAccessibleInterval<FloatType> xyc = Views.permute(Views.permute(img, 0, 1), 1, 2);
+        assertImagesEqual(Views.addDimension(Views.addDimension(xyc, 0, 0), 0, 0), image);
+    }
+
+    /**
+     * Test of write method for an image spanning several 3D chunks, of class Hdf5DataSetWriter.
+     */
+    @Test
+    public void testWriteHDF5ChunkAligned() {
+        Img<FloatType> img = ArrayImgs.floats(33, 70, 2, 40, 2);
+        float value = 0;
+        for (FloatType pixel : img) {
+            pixel.set(value++);
+        }
+        assertRoundTrip(img, 32);
+    }
+
+    /**
+     * Test of write method with several gathering threads, of class Hdf5DataSetWriter.
+     */
+    @Test
+    public void testWriteHDF5MultiThreaded() {
+        Img<UnsignedShortType> img = ArrayImgs.unsignedShorts(33, 70, 2, 40, 2);
+        int value = 0;
+        for (UnsignedShortType pixel : img) {
+            pixel.set(value++ % 65536);
+        }
+        ImgPlus<UnsignedShortType> imgPlus = new ImgPlus<>(img, "", AXES.toArray(new AxisType[0]));
+        Hdf5DataSetWriter<UnsignedShortType> writer = new Hdf5DataSetWriter<>(imgPlus, testH5.getPath(), DATASET, 1,
+                logService, statusService);
+        writer.setNumThreads(4);
+        writer.write();
+        assertImagesEqual(img, readFromHdf5(testH5.getPath(), DATASET, "tzyxc", logService, statusService));
+    }
+
+    /**
+     * Test of writeAsync method and of a write queue holding a single write, of class Hdf5DataSetWriter.
+     */
+    @Test
+    public void testWriteHDF5Async() throws Exception {
+        Img<UnsignedShortType> img = ArrayImgs.unsignedShorts(33, 70, 2, 4, 2);
+        int value = 0;
+        for (UnsignedShortType pixel : img) {
+            pixel.set(value++ % 65536);
+        }
+        ImgPlus<UnsignedShortType> imgPlus = new ImgPlus<>(img, "", AXES.toArray(new AxisType[0]));
+        new Hdf5DataSetWriter<>(imgPlus, testH5.getPath(), DATASET, 1, logService, statusService).writeAsync().get();
+        assertImagesEqual(img, readFromHdf5(testH5.getPath(), DATASET, "tzyxc", logService, statusService));
+
+        // both writes go to the same file, so the second one waits for the first one
+        Hdf5WriteQueue queue = new Hdf5WriteQueue(1);
+        CompletableFuture<Void> first = queue.submit(new Hdf5DataSetWriter<>(imgPlus, testH5.getPath(), "first", 1,
+                logService, statusService));
+        CompletableFuture<Void> second = queue.submit(new Hdf5DataSetWriter<>(imgPlus, testH5.getPath(), "second", 1,
+                logService, statusService));
+        CompletableFuture.allOf(first, second).get();
+        queue.shutdown();
+        assertImagesEqual(img, readFromHdf5(testH5.getPath(), "first", "tzyxc", logService, statusService));
+        assertImagesEqual(img, readFromHdf5(testH5.getPath(), "second", "tzyxc", logService, statusService));
+    }
+
+    /**
+     * Test of write method with an explicit chunk shape and shuffling, of class Hdf5DataSetWriter.
+     */
+    @Test
+    public void testWriteHDF5ChunkShape() {
+        Img<UnsignedShortType> img = ArrayImgs.unsignedShorts(33, 70, 2, 40, 2);
+        int value = 0;
+        for (UnsignedShortType pixel : img) {
+            pixel.set(value++ % 65536);
+        }
+        ImgPlus<UnsignedShortType> imgPlus = new ImgPlus<>(img, "", AXES.toArray(new AxisType[0]));
+        Hdf5DataSetWriter<UnsignedShortType> writer = new Hdf5DataSetWriter<>(imgPlus, testH5.getPath(), DATASET, 3,
+                logService, statusService);
+        int[] chunkShape = Hdf5Utils.chunkShape("1, 8, 16, 64, 2", writer.getDatasetDimensions());
+        assertArrayEquals("Chunk shape should be clamped to the image", new int[]{1, 8, 16, 33, 2}, chunkShape);
+        writer.setChunkShape(chunkShape);
+        writer.setShuffle(true);
+        writer.write();
+
+        try (IHDF5Reader reader = HDF5Factory.openForReading(testH5.getPath())) {
+            assertArrayEquals(chunkShape, reader.object().getDataSetInformation(DATASET).tryGetChunkSizes());
+        }
+        assertImagesEqual(img, readFromHdf5(testH5.getPath(), DATASET, "tzyxc", logService, statusService));
+    }
+
+    /**
+     * Test of appendFrame method, of class Hdf5AppendableWriter.
+     */
+    @Test
+    public void testAppendFrames() {
+        Img<FloatType> movie = ArrayImgs.floats(6, 5, 2, 3, 4);
+        float value = 0;
+        for (FloatType pixel : movie) {
+            pixel.set(value++);
+        }
+
+        AxisType[] frameAxes = {Axes.X, Axes.Y, Axes.CHANNEL, Axes.Z};
+        try (Hdf5AppendableWriter<FloatType> writer = new Hdf5AppendableWriter<>(testH5.getPath(), DATASET, 1, logService)) {
+            for (long t = 0; t < movie.dimension(4); t++) {
+                Img<FloatType> frame = ImgView.wrap(Views.hyperSlice(movie, 4, t), movie.factory());
+                writer.appendFrame(new ImgPlus<>(frame, "", frameAxes));
+            }
+            assertEquals("Number of frames should be 4", 4, writer.getNumFrames());
+        }
+        assertImagesEqual(movie, readFromHdf5(testH5.getPath(), DATASET, "tzyxc", logService, statusService));
+    }
+
+    private <T extends RealType<T> & NativeType<T>> void assertRoundTrip(Img<T> img, int bits) {
+        ImgPlus<T> imgPlus = new ImgPlus<>(img, "", AXES.toArray(new AxisType[0]));
+        new Hdf5DataSetWriter<>(imgPlus, testH5.getPath(), DATASET, 0, logService, statusService).write();
+        ImgPlus<T> image = readFromHdf5(testH5.getPath(), DATASET, "tzyxc", logService, statusService);
+        assertEquals("Bits should be " + bits, bits, image.getValidBits());
+        assertEquals("Type should be same.", img.firstElement().getClass(), image.firstElement().getClass());
+        assertImagesEqual(img, image);
+    }
+
+    /**
+     * Test of read method on a contiguous dataset stored in the XYCZT layout of the image, of class Hdf5DataSetReader.
+     */
+    @Test
+    public void testReadContiguousImageLayout() throws IOException {
+        Img<UnsignedByteType> img = createPositionImage(7, 5, 2, 3, 2);
+        File file = writeContiguous(img, "tzcyx");
+        try {
+            assertTrue("Dataset should be used as image storage", readConfig(file, "tzcyx").hasImageMemoryLayout());
+            ImgPlus<UnsignedByteType> image = readFromHdf5(file.getPath(), DATASET, "tzcyx", logService, statusService);
+            assertTrue("Dataset should be read into an array image", image.getImg() instanceof ArrayImg);
+            assertImagesEqual(img, image);
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Test of read method on a contiguous dataset that is read in slabs, of class Hdf5DataSetReader.
+     */
+    @Test
+    public void testReadContiguousSlabs() throws IOException {
+        Img<UnsignedByteType> img = createPositionImage(7, 5, 3, 4, 2);
+        File file = writeContiguous(img, "tzyxc");
+        try {
+            Hdf5DataSetConfig config = readConfig(file, "tzyxc");
+            assertTrue("Channels should make the layout differ from the image", !config.hasImageMemoryLayout());
+            assertArrayEquals("Small dataset should be read in a single slab", new int[]{7, 5, 3, 4, 2}, config.getImageBlockSize());
+            assertImagesEqual(img, readFromHdf5(file.getPath(), DATASET, "tzyxc", logService, statusService));
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Test of read method on a contiguous dataset whose slabs split an axis, of class Hdf5DataSetReader.
+     */
+    @Test
+    public void testReadContiguousSplitSlabs() throws IOException {
+        // 5 * 2048 * 4096 * 2 pixels, more than a slab holds: c, x and y fit completely, z only 4 times
+        Img<UnsignedByteType> img = createPositionImage(4096, 2048, 2, 5, 1);
+        File file = writeContiguous(img, "tzyxc");
+        try {
+            assertArrayEquals("Slab should split Z", new int[]{4096, 2048, 2, 4, 1}, readConfig(file, "tzyxc").getImageBlockSize());
+            assertImagesEqual(img, readFromHdf5(file.getPath(), DATASET, "tzyxc", logService, statusService));
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * @return an XYCZT image whose pixels tell their positions apart
+     */
+    private static Img<UnsignedByteType> createPositionImage(long... dims) {
+        Img<UnsignedByteType> img = ArrayImgs.unsignedBytes(dims);
+        Cursor<UnsignedByteType> cursor = img.localizingCursor();
+        while (cursor.hasNext()) {
+            cursor.fwd();
+            long x = cursor.getLongPosition(0);
+            long y = cursor.getLongPosition(1);
+            long c = cursor.getLongPosition(2);
+            long z = cursor.getLongPosition(3);
+            long t = cursor.getLongPosition(4);
+            cursor.get().set((int) ((x * 31 + y * 17 + c * 11 + z * 7 + t * 3) % 251));
+        }
+        return img;
+    }
+
+    /**
+     * Writes the XYCZT image as a contiguous dataset with the given axis order.
+     */
+    private static File writeContiguous(Img<UnsignedByteType> img, String axesOrder) throws IOException {
+        int[] shape = new int[axesOrder.length()];
+        long[] imageStrides = new long[axesOrder.length()];
+        long stride = 1;
+        for (int k = axesOrder.length() - 1; k >= 0; k--) {
+            int d = Hdf5Utils.IMAGE_AXES.indexOf(axesOrder.charAt(k));
+            shape[k] = (int) img.dimension(d);
+            imageStrides[d] = stride;
+            stride *= shape[k];
+        }
+        byte[] data = new byte[Math.toIntExact(stride)];
+        Cursor<UnsignedByteType> cursor = img.localizingCursor();
+        while (cursor.hasNext()) {
+            cursor.fwd();
+            long index = 0;
+            for (int d = 0; d < imageStrides.length; d++) {
+                index += cursor.getLongPosition(d) * imageStrides[d];
+            }
+            data[(int) index] = (byte) cursor.get().get();
+        }
+
+        File file = File.createTempFile("contiguous", ".h5");
+        // JHDF5 creates the file itself
+        file.delete();
+        try (IHDF5Writer writer = HDF5Factory.open(file)) {
+            writer.uint8().writeMDArray(DATASET, new MDByteArray(data, shape), HDF5IntStorageFeatures.INT_CONTIGUOUS);
+        }
+        return file;
+    }
+
+    private static Hdf5DataSetConfig readConfig(File file, String axesOrder) {
+        try (IHDF5Reader reader = HDF5Factory.openForReading(file)) {
+            return new Hdf5DataSetConfig(reader.object().getDataSetInformation(DATASET), axesOrder);
+        }
+    }
+
+    private static <T extends RealType<T>> void assertImagesEqual(RandomAccessibleInterval<T> expected,
+                                                                  RandomAccessibleInterval<T> actual) {
+        long[] expectedDims = new long[expected.numDimensions()];
+        long[] actualDims = new long[actual.numDimensions()];
+        expected.dimensions(expectedDims);
+        actual.dimensions(actualDims);
+        assertArrayEquals("Dimensions should be same.", expectedDims, actualDims);
+
+        Cursor<T> expectedCursor = Views.flatIterable(expected).cursor();
+        Cursor<T> actualCursor = Views.flatIterable(actual).cursor();
+        while (expectedCursor.hasNext()) {
+            assertEquals("Image content should be same.", expectedCursor.next().getRealDouble(),
+                    actualCursor.next().getRealDouble(), 0);
+        }
+    }
+
     private <T extends NativeType<T>> ImgPlus<T> readFromHdf5(String filename, String dataset, String axesOrder,
                                                               LogService logService, StatusService statusService) {
         return new Hdf5DataSetReader<T>(filename, dataset, axesOrder, logService, statusService).read();
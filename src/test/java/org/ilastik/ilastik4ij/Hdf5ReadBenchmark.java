@@ -0,0 +1,148 @@
+package org.ilastik.ilastik4ij;
+
+import ch.systemsx.cisd.base.mdarray.MDFloatArray;
+import ch.systemsx.cisd.hdf5.HDF5DataSetInformation;
+import ch.systemsx.cisd.hdf5.HDF5Factory;
+import ch.systemsx.cisd.hdf5.HDF5FloatStorageFeatures;
+import ch.systemsx.cisd.hdf5.IHDF5Reader;
+import ch.systemsx.cisd.hdf5.IHDF5Writer;
+import net.imagej.ImageJ;
+import net.imagej.ImgPlus;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.Img;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.type.numeric.real.FloatType;
+import org.ilastik.ilastik4ij.hdf5.Hdf5DataSetConfig;
+import org.ilastik.ilastik4ij.hdf5.Hdf5DataSetReader;
+import org.ilastik.ilastik4ij.util.IOUtils;
+import org.scijava.log.LogService;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.stream.IntStream;
+
+/**
+ * Compares the boxing-free import of Hdf5DataSetReader with the former per-pixel boxed import,
+ * and the single-read path for contiguous datasets with the blockwise read of a chunked dataset.
+ * <p>
+ * Usage: Hdf5ReadBenchmark [t z y x c], defaults to a float32 dataset of shape (1, 32, 512, 512, 3).
+ */
+public class Hdf5ReadBenchmark {
+    private static final String DATASET = "exported_data";
+    private static final String CONTIGUOUS_DATASET = "contiguous_data";
+    private static final int REPETITIONS = 3;
+
+    public static void main(String[] args) throws IOException {
+        final long[] dims = args.length == 5
+                ? new long[]{Long.parseLong(args[0]), Long.parseLong(args[1]), Long.parseLong(args[2]),
+                Long.parseLong(args[3]), Long.parseLong(args[4])}
+                : new long[]{1, 32, 512, 512, 3};
+
+        final ImageJ ij = new ImageJ();
+        final LogService log = ij.log();
+        final File h5File = new File(IOUtils.getTemporaryFileName("_benchmark.h5"));
+        try {
+            writeSyntheticDataset(h5File.getAbsolutePath(), dims);
+
+            for (int i = 0; i < REPETITIONS; i++) {
+                long start = System.nanoTime();
+                readBoxed(h5File.getAbsolutePath());
+                long boxed = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                ImgPlus<FloatType> img = new Hdf5DataSetReader<FloatType>(h5File.getAbsolutePath(), DATASET,
+                        "tzyxc", log, null).read();
+                long primitive = System.nanoTime() - start;
+
+                log.info(String.format("Run %d: boxed %d ms, primitive %d ms (speedup %.1fx), first value %f",
+                        i, boxed / 1000000, primitive / 1000000, (double) boxed / primitive,
+                        img.firstElement().get()));
+            }
+
+            // same pixels, stored contiguously with an axis order matching the XYCZT image layout
+            writeContiguousDataset(h5File.getAbsolutePath(), dims);
+            for (int i = 0; i < REPETITIONS; i++) {
+                long start = System.nanoTime();
+                new Hdf5DataSetReader<FloatType>(h5File.getAbsolutePath(), DATASET, "tzyxc", log, null).read();
+                long chunked = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                new Hdf5DataSetReader<FloatType>(h5File.getAbsolutePath(), CONTIGUOUS_DATASET, "tzcyx", log, null).read();
+                long contiguous = System.nanoTime() - start;
+
+                log.info(String.format("Run %d: chunked %d ms, contiguous %d ms (speedup %.1fx)",
+                        i, chunked / 1000000, contiguous / 1000000, (double) chunked / contiguous));
+            }
+        } finally {
+            h5File.delete();
+            ij.context().dispose();
+        }
+    }
+
+    private static void writeSyntheticDataset(String path, long[] dims) {
+        final int planeSize = (int) (dims[2] * dims[3] * dims[4]);
+        try (IHDF5Writer writer = HDF5Factory.open(path)) {
+            writer.float32().createMDArray(DATASET, dims, new int[]{1, 1, (int) dims[2], (int) dims[3], (int) dims[4]},
+                    HDF5FloatStorageFeatures.createDeflationDelete(1));
+            for (long t = 0; t < dims[0]; t++) {
+                for (long z = 0; z < dims[1]; z++) {
+                    final float base = t * dims[1] + z;
+                    float[] plane = new float[planeSize];
+                    for (int i = 0; i < planeSize; i++) {
+                        plane[i] = base + (i % 251) / 251.0f;
+                    }
+                    MDFloatArray mdArray = new MDFloatArray(plane, new int[]{1, 1, (int) dims[2], (int) dims[3], (int) dims[4]});
+                    writer.float32().writeMDArrayBlockWithOffset(DATASET, mdArray, new long[]{t, z, 0, 0, 0});
+                }
+            }
+        }
+    }
+
+    private static void writeContiguousDataset(String path, long[] dims) {
+        final int[] shape = {(int) dims[0], (int) dims[1], (int) dims[4], (int) dims[2], (int) dims[3]};
+        final float[] data = new float[shape[0] * shape[1] * shape[2] * shape[3] * shape[4]];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (i % 251) / 251.0f;
+        }
+        try (IHDF5Writer writer = HDF5Factory.open(path)) {
+            writer.float32().writeMDArray(CONTIGUOUS_DATASET, new MDFloatArray(data, shape),
+                    HDF5FloatStorageFeatures.FLOAT_CONTIGUOUS);
+        }
+    }
+
+    /**
+     * The import path Hdf5DataSetReader used before: every XY slice is boxed into an Object[]
+     * and unboxed again pixel by pixel through a RandomAccess.
+     */
+    private static Img<FloatType> readBoxed(String path) {
+        try (IHDF5Reader reader = HDF5Factory.openForReading(path)) {
+            HDF5DataSetInformation dsInfo = reader.object().getDataSetInformation(DATASET);
+            Hdf5DataSetConfig dsConfig = new Hdf5DataSetConfig(dsInfo, "tzyxc");
+            final Img<FloatType> img = new CellImgFactory<>(new FloatType()).create(dsConfig.getImageDimensions());
+
+            RandomAccess<FloatType> rai = img.randomAccess();
+            final int[] extents = dsConfig.getXYSliceExtent();
+            for (int frame = 0; frame < dsConfig.numFrames; ++frame) {
+                rai.setPosition(frame, 4);
+                for (int lev = 0; lev < dsConfig.dimZ; ++lev) {
+                    rai.setPosition(lev, 3);
+                    for (int c = 0; c < dsConfig.numChannels; ++c) {
+                        rai.setPosition(c, 2);
+                        long[] offset = dsConfig.getSliceOffset(frame, lev, c);
+                        float[] floatArray = reader.float32().readMDArrayBlockWithOffset(DATASET, extents, offset).getAsFlatArray();
+                        Object[] flatArray = IntStream.range(0, floatArray.length).mapToDouble(i -> floatArray[i]).boxed().toArray();
+                        for (int x = 0; x < dsConfig.dimX; x++) {
+                            rai.setPosition(x, 0);
+                            for (int y = 0; y < dsConfig.dimY; y++) {
+                                rai.setPosition(y, 1);
+                                double d = (double) flatArray[y * dsConfig.dimX + x];
+                                rai.get().set((float) d);
+                            }
+                        }
+                    }
+                }
+            }
+            return img;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package org.ilastik.ilastik4ij;
+
+import net.imagej.ImageJ;
+import net.imagej.ImgPlus;
+import net.imagej.axis.Axes;
+import net.imagej.axis.AxisType;
+import net.imglib2.img.Img;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import org.ilastik.ilastik4ij.hdf5.Hdf5DataSetWriter;
+import org.ilastik.ilastik4ij.util.IOUtils;
+import org.scijava.log.LogService;
+
+import java.io.File;
+
+/**
+ * Exports a synthetic uint16 volume stored in a cell image with several numbers of gathering threads,
+ * to tell whether {@link Hdf5DataSetWriter#setNumThreads(int)} pays off on a machine. Deflate runs on
+ * the writing thread either way, so the gain is bounded by the share of the time spent gathering.
+ * <p>
+ * Usage: Hdf5WriteBenchmark [compression level] [z y x], defaults to level 1 on a (128, 512, 512) volume.
+ */
+public class Hdf5WriteBenchmark {
+    private static final String DATASET = "data";
+    private static final int CELL_SIZE = 64;
+    private static final int REPETITIONS = 3;
+
+    public static void main(String[] args) {
+        final int compressionLevel = args.length > 0 ? Integer.parseInt(args[0]) : 1;
+        final long[] zyx = args.length == 4
+                ? new long[]{Long.parseLong(args[1]), Long.parseLong(args[2]), Long.parseLong(args[3])}
+                : new long[]{128, 512, 512};
+
+        final ImageJ ij = new ImageJ();
+        final LogService log = ij.log();
+        final File h5File = new File(IOUtils.getTemporaryFileName("_write.h5"));
+        try {
+            final ImgPlus<UnsignedShortType> image = createImage(zyx);
+            final int maxThreads = Runtime.getRuntime().availableProcessors();
+            for (int numThreads = 1; numThreads <= maxThreads; numThreads *= 2) {
+                long best = Long.MAX_VALUE;
+                for (int i = 0; i < REPETITIONS; i++) {
+                    final Hdf5DataSetWriter<UnsignedShortType> writer = new Hdf5DataSetWriter<>(image,
+                            h5File.getAbsolutePath(), DATASET, compressionLevel, log, null);
+                    writer.setNumThreads(numThreads);
+                    final long start = System.nanoTime();
+                    writer.write();
+                    best = Math.min(best, System.nanoTime() - start);
+                    h5File.delete();
+                }
+                log.info(String.format("%2d gathering threads: write %d ms", numThreads, best / 1000000));
+            }
+        } finally {
+            h5File.delete();
+            ij.context().dispose();
+        }
+    }
+
+    private static ImgPlus<UnsignedShortType> createImage(long[] zyx) {
+        final Img<UnsignedShortType> img = new CellImgFactory<>(new UnsignedShortType(), CELL_SIZE)
+                .create(zyx[2], zyx[1], zyx[0]);
+        int i = 0;
+        for (UnsignedShortType pixel : img) {
+            // smooth ramps with some noise, compresses roughly like microscopy data
+            pixel.set((i / 7 + (i * 31 % 13)) & 0xffff);
+            i++;
+        }
+        return new ImgPlus<>(img, "benchmark", new AxisType[]{Axes.X, Axes.Y, Axes.Z});
+    }
+}
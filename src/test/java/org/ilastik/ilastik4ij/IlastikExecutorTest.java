@@ -0,0 +1,281 @@
+package org.ilastik.ilastik4ij;
+
+import net.imagej.ImgPlus;
+import net.imagej.axis.Axes;
+import net.imagej.axis.AxisType;
+import net.imglib2.Cursor;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+import org.ilastik.ilastik4ij.executors.AbstractIlastikExecutor.PixelPredictionType;
+import org.ilastik.ilastik4ij.executors.ObjectClassification;
+import org.ilastik.ilastik4ij.executors.PixelClassification;
+import org.ilastik.ilastik4ij.executors.Tracking;
+import org.ilastik.ilastik4ij.hdf5.Hdf5DataSetReader;
+import org.ilastik.ilastik4ij.hdf5.Hdf5DataSetWriter;
+import org.ilastik.ilastik4ij.util.IOUtils;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.scijava.Context;
+import org.scijava.log.LogService;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the executors on {@link IlastikStandIn}, which exports its inputs unchanged, so that everything but ilastik
+ * itself is tested: staging, command lines, and reading back the outputs.
+ */
+public class IlastikExecutorTest {
+    static final AxisType[] XYCZT = {Axes.X, Axes.Y, Axes.CHANNEL, Axes.Z, Axes.TIME};
+    private static Context context;
+    private static LogService logService;
+
+    private File directory;
+    private File executable;
+    private File standInLog;
+
+    @BeforeClass
+    public static void setUpClass() {
+        context = new Context(LogService.class);
+        logService = context.getService(LogService.class);
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        context.dispose();
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        // the executors start a single executable, a script runs the stand-in in a JVM
+        Assume.assumeFalse("The stand-in executable is a shell script", System.getProperty("os.name").startsWith("Windows"));
+        directory = Files.createTempDirectory("ilastik4j_executor").toFile();
+        standInLog = new File(directory, "stand-in.log");
+        executable = createStandInExecutable(directory, standInLog);
+    }
+
+    @After
+    public void tearDown() {
+        if (directory != null) {
+            IOUtils.deleteRecursively(directory);
+        }
+    }
+
+    /**
+     * @return a script running {@link IlastikStandIn}, which logs to the given file
+     */
+    static File createStandInExecutable(File directory, File log) throws IOException {
+        File executable = new File(directory, "run_ilastik.sh");
+        String java = new File(System.getProperty("java.home"), "bin" + File.separator + "java").getPath();
+        Files.write(executable.toPath(), Arrays.asList("#!/bin/sh",
+                String.format("exec '%s' -cp '%s' %s '--log=%s' \"$@\"", java, System.getProperty("java.class.path"),
+                        IlastikStandIn.class.getName(), log.getPath())), StandardCharsets.UTF_8);
+        assertTrue("Stand-in script should be executable", executable.setExecutable(true));
+        return executable;
+    }
+
+    /**
+     * @return an image in XYCZT order whose pixels tell their positions apart
+     */
+    static Img<UnsignedByteType> createImage(long... dims) {
+        Img<UnsignedByteType> img = ArrayImgs.unsignedBytes(dims);
+        int value = 0;
+        for (UnsignedByteType pixel : Views.flatIterable(img)) {
+            pixel.set(value++ % 251);
+        }
+        return img;
+    }
+
+    static void assertSamePixels(String message, ImgPlus<UnsignedByteType> expected, ImgPlus<UnsignedByteType> actual) {
+        assertArrayEquals(message + ": dimensions", Intervals.dimensionsAsLongArray(expected), Intervals.dimensionsAsLongArray(actual));
+        Cursor<UnsignedByteType> e = Views.flatIterable(expected).cursor();
+        Cursor<UnsignedByteType> a = Views.flatIterable(actual).cursor();
+        while (e.hasNext()) {
+            e.fwd();
+            a.fwd();
+            assertEquals(message + ": pixel at " + Arrays.toString(positionOf(e)), e.get().get(), a.get().get());
+        }
+    }
+
+    private static long[] positionOf(Cursor<?> cursor) {
+        long[] position = new long[cursor.numDimensions()];
+        cursor.localize(position);
+        return position;
+    }
+
+    @Test
+    public void testStagedInputIsClassified() throws IOException {
+        ImgPlus<UnsignedByteType> input = new ImgPlus<>(createImage(9, 7, 2, 3, 2), "input", XYCZT);
+        PixelClassification executor = new PixelClassification(executable, new File(directory, "project.ilp"),
+                logService, null, 1, 1024);
+        executor.setScratchDirectory(directory.getPath());
+
+        ImgPlus<UnsignedByteType> output = executor.classifyPixels(input, PixelPredictionType.Probabilities);
+
+        assertSamePixels("Output should be read back in XYCZT order", input, output);
+        assertEquals("The staged input should be a file of its own", "false", getLoggedInputs().get(0).split("\t")[1]);
+    }
+
+    @Test
+    public void testImportedInputIsLinked() throws IOException {
+        ImgPlus<UnsignedByteType> imported = writeAndImport(createImage(9, 7, 2, 3, 2));
+        PixelClassification executor = new PixelClassification(executable, new File(directory, "project.ilp"),
+                logService, null, 1, 1024);
+        executor.setScratchDirectory(directory.getPath());
+        executor.setPassThroughHdf5(true);
+
+        ImgPlus<UnsignedByteType> output = executor.classifyPixels(imported, PixelPredictionType.Probabilities);
+
+        assertSamePixels("Output of the linked input should match the input", imported, output);
+        String[] input = getLoggedInputs().get(0).split("\t");
+        assertTrue("ilastik should get the dataset of the imported file", input[0].endsWith(".h5/volume"));
+        assertEquals("The imported file should be linked instead of staged", "true", input[1]);
+    }
+
+    @Test
+    public void testModifiedImportedInputIsStaged() throws IOException {
+        ImgPlus<UnsignedByteType> imported = writeAndImport(createImage(9, 7, 2, 3, 2));
+        File file = new File((String) imported.getProperties().get(Hdf5DataSetReader.FILE_PROPERTY));
+        assertTrue("File should be touched", file.setLastModified(file.lastModified() - 60000));
+        PixelClassification executor = new PixelClassification(executable, new File(directory, "project.ilp"),
+                logService, null, 1, 1024);
+        executor.setScratchDirectory(directory.getPath());
+        executor.setPassThroughHdf5(true);
+
+        ImgPlus<UnsignedByteType> output = executor.classifyPixels(imported, PixelPredictionType.Probabilities);
+
+        assertSamePixels("Output of the staged input should match the input", imported, output);
+        assertEquals("A file changed since the import should be staged", "false", getLoggedInputs().get(0).split("\t")[1]);
+    }
+
+    @Test
+    public void testTiledClassificationMatchesUntiled() throws IOException {
+        // blocks do not divide the image, and the halo reaches beyond the neighboring blocks
+        ImgPlus<UnsignedByteType> input = new ImgPlus<>(createImage(12, 11, 2, 7, 2), "input", XYCZT);
+        PixelClassification executor = new PixelClassification(executable, new File(directory, "project.ilp"),
+                logService, null, 1, 1024);
+        executor.setScratchDirectory(directory.getPath());
+        // 36 blocks in 3 runs
+        executor.setBlocksPerRun(12);
+
+        ImgPlus<UnsignedByteType> untiled = executor.classifyPixels(input, PixelPredictionType.Probabilities);
+        ImgPlus<UnsignedByteType> tiled = executor.classifyPixelsTiled(input, PixelPredictionType.Probabilities, 5, 6);
+
+        assertSamePixels("Tiled classification should stitch the output of a single run", untiled, tiled);
+    }
+
+    @Test
+    public void testBatchOutputsMatchInputs() throws IOException {
+        // more than 10 inputs, so that the nickname of one input is not a prefix of another one
+        List<ImgPlus<UnsignedByteType>> rawInputs = new ArrayList<>();
+        List<ImgPlus<UnsignedByteType>> secondInputs = new ArrayList<>();
+        for (int i = 0; i < 11; i++) {
+            rawInputs.add(new ImgPlus<>(createImage(3 + i, 4, 1, 2, 1), "raw", XYCZT));
+            secondInputs.add(new ImgPlus<>(createImage(3 + i, 4, 2, 2, 1), "probabilities", XYCZT));
+        }
+        ObjectClassification executor = new ObjectClassification(executable, new File(directory, "project.ilp"),
+                logService, null, 1, 1024);
+        executor.setScratchDirectory(directory.getPath());
+
+        List<ImgPlus<UnsignedByteType>> outputs = executor.classifyObjects(rawInputs, secondInputs, PixelPredictionType.Probabilities);
+
+        assertEquals("Every input should have an output", rawInputs.size(), outputs.size());
+        for (int i = 0; i < rawInputs.size(); i++) {
+            assertSamePixels("Output " + i + " should be the output of its input", rawInputs.get(i), outputs.get(i));
+        }
+        List<String> commandLine = getLoggedCommandLine();
+        List<String> raw = getListArgument(commandLine, "--raw_data", rawInputs.size());
+        List<String> second = getListArgument(commandLine, "--prediction_maps", secondInputs.size());
+        for (int i = 0; i < rawInputs.size(); i++) {
+            String index = String.format("%02d", i);
+            assertTrue("Raw inputs should be listed in order", raw.get(i).endsWith("in_raw_" + index + ".h5"));
+            assertTrue("Second inputs should be listed in the order of the raw inputs", second.get(i).endsWith("in_2nd_" + index + ".h5"));
+        }
+        assertTrue("Outputs should be named after the inputs",
+                commandLine.stream().anyMatch(arg -> arg.startsWith("--output_filename_format=") && arg.endsWith("{nickname}_out.h5")));
+    }
+
+    @Test
+    public void testTrackingCommandLine() throws IOException {
+        List<ImgPlus<UnsignedByteType>> rawInputs = Arrays.asList(
+                new ImgPlus<>(createImage(5, 4, 1, 1, 3), "raw", XYCZT), new ImgPlus<>(createImage(6, 4, 1, 1, 3), "raw", XYCZT));
+        List<ImgPlus<UnsignedByteType>> segmentations = Arrays.asList(
+                new ImgPlus<>(createImage(5, 4, 1, 1, 3), "segmentation", XYCZT), new ImgPlus<>(createImage(6, 4, 1, 1, 3), "segmentation", XYCZT));
+        Tracking executor = new Tracking(executable, new File(directory, "project.ilp"), logService, null, 1, 1024);
+        executor.setScratchDirectory(directory.getPath());
+
+        List<ImgPlus<UnsignedByteType>> outputs = executor.trackObjects(rawInputs, segmentations, PixelPredictionType.Segmentation);
+
+        assertSamePixels("First output should be the output of the first input", rawInputs.get(0), outputs.get(0));
+        assertSamePixels("Second output should be the output of the second input", rawInputs.get(1), outputs.get(1));
+        List<String> commandLine = getLoggedCommandLine();
+        assertTrue("Tracking result should be exported", commandLine.contains("--export_source=Tracking-Result"));
+        assertEquals("Segmentations should be passed as such", 2, getListArgument(commandLine, "--segmentation_image", 2).size());
+    }
+
+    @Test
+    public void testPixelClassificationCommandLine() throws IOException {
+        List<ImgPlus<UnsignedByteType>> inputs = Arrays.asList(
+                new ImgPlus<>(createImage(5, 4, 1, 1, 1), "raw", XYCZT), new ImgPlus<>(createImage(6, 4, 1, 1, 1), "raw", XYCZT));
+        PixelClassification executor = new PixelClassification(executable, new File(directory, "project.ilp"),
+                logService, null, 1, 1024);
+        executor.setScratchDirectory(directory.getPath());
+
+        executor.classifyPixels(inputs, PixelPredictionType.Segmentation);
+
+        List<String> commandLine = getLoggedCommandLine();
+        assertTrue("Segmentation should be exported", commandLine.contains("--export_source=Simple Segmentation"));
+        assertTrue("Output axis order should be that of the reader", commandLine.contains("--output_axis_order=tzyxc"));
+        // pixel classification takes its inputs as positional arguments
+        List<String> positional = commandLine.stream().filter(arg -> !arg.startsWith("--")).collect(Collectors.toList());
+        assertEquals("Inputs should be passed in order", 2, positional.size());
+        assertTrue("Inputs should be passed in order", positional.get(0).endsWith("in_raw_0.h5") && positional.get(1).endsWith("in_raw_1.h5"));
+    }
+
+    private ImgPlus<UnsignedByteType> writeAndImport(Img<UnsignedByteType> img) {
+        String file = new File(directory, "imported.h5").getPath();
+        new Hdf5DataSetWriter<>(new ImgPlus<>(img, "imported", XYCZT), file, "volume", 0, logService, null).write();
+        return new Hdf5DataSetReader<UnsignedByteType>(file, "volume", "tzyxc", logService, null).read();
+    }
+
+    /**
+     * @return the arguments the stand-in got in its first run
+     */
+    private List<String> getLoggedCommandLine() throws IOException {
+        return Arrays.asList(Files.readAllLines(standInLog.toPath(), StandardCharsets.UTF_8).get(0).split("\t"));
+    }
+
+    /**
+     * @return the values following a list option on the command line
+     */
+    private static List<String> getListArgument(List<String> commandLine, String option, int size) {
+        int index = commandLine.indexOf(option);
+        assertTrue("Command line should have " + option, index >= 0);
+        return commandLine.subList(index + 1, index + 1 + size);
+    }
+
+    /**
+     * @return the inputs the stand-in got, each followed by a tab and whether it was a symbolic link
+     */
+    private List<String> getLoggedInputs() throws IOException {
+        List<String> lines = Files.readAllLines(standInLog.toPath(), StandardCharsets.UTF_8);
+        return lines.subList(1, lines.size());
+    }
+}
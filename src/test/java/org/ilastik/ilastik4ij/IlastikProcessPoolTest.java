@@ -0,0 +1,49 @@
+package org.ilastik.ilastik4ij;
+
+import org.ilastik.ilastik4ij.executors.IlastikProcessPool;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class IlastikProcessPoolTest {
+
+    @Test
+    public void testProcessPoolSplitsBudget() throws Exception {
+        try (IlastikProcessPool pool = new IlastikProcessPool(4, 64, 512 * 1024)) {
+            assertEquals("Threads should be split over the processes", 16, pool.getThreadsPerProcess());
+            assertEquals("RAM should be split over the processes", 128 * 1024, pool.getRamMbPerProcess());
+
+            AtomicInteger running = new AtomicInteger();
+            AtomicInteger maxRunning = new AtomicInteger();
+            List<CompletableFuture<Integer>> jobs = new ArrayList<>();
+            for (int i = 0; i < 12; i++) {
+                jobs.add(pool.submit((numThreads, maxRamMb) -> {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    try {
+                        Thread.sleep(50);
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                    running.decrementAndGet();
+                    return numThreads;
+                }));
+            }
+            for (CompletableFuture<Integer> job : jobs) {
+                assertEquals("Every job should get the budget of a slot", 16, (int) job.get());
+            }
+            assertTrue("At most 4 jobs should run at the same time", maxRunning.get() <= 4);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooLittleRamIsRejected() {
+        new IlastikProcessPool(8, 64, 1024);
+    }
+}
@@ -0,0 +1,100 @@
+package org.ilastik.ilastik4ij;
+
+import net.imagej.ImgPlus;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.RealType;
+import org.ilastik.ilastik4ij.hdf5.Hdf5DataSetReader;
+import org.ilastik.ilastik4ij.hdf5.Hdf5DataSetWriter;
+import org.scijava.Context;
+import org.scijava.log.LogService;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Stands in for the ilastik executable in the executor tests: takes the headless command line of the executors
+ * and exports every raw input unchanged, named like ilastik names its outputs. Inputs without a dataset path are
+ * read from "data", the dataset of the staged files. With {@code --log=<file>}, the command line and, for every
+ * input, whether it is a symbolic link are appended to the file.
+ */
+public class IlastikStandIn {
+    private static final String LOG_ARG = "--log=";
+    private static final String OUTPUT_ARG = "--output_filename_format=";
+    private static final List<String> INPUT_LISTS = Arrays.asList("--raw_data", "--prediction_maps", "--segmentation_image");
+
+    public static void main(String[] args) throws IOException {
+        Path log = null;
+        String outputFormat = null;
+        List<String> rawInputs = new ArrayList<>();
+        List<String> allInputs = new ArrayList<>();
+        String list = "--raw_data";
+        for (String arg : args) {
+            if (arg.startsWith(LOG_ARG)) {
+                log = Paths.get(arg.substring(LOG_ARG.length()));
+            } else if (arg.startsWith(OUTPUT_ARG)) {
+                outputFormat = arg.substring(OUTPUT_ARG.length());
+            } else if (INPUT_LISTS.contains(arg)) {
+                list = arg;
+            } else if (!arg.startsWith("--")) {
+                allInputs.add(arg);
+                if (list.equals("--raw_data")) {
+                    rawInputs.add(arg);
+                }
+            }
+        }
+        if (log != null) {
+            List<String> lines = new ArrayList<>();
+            lines.add(String.join("\t", args));
+            for (String input : allInputs) {
+                lines.add(input + "\t" + Files.isSymbolicLink(Paths.get(splitInput(input)[0])));
+            }
+            Files.write(log, lines, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+
+        Context context = new Context(LogService.class);
+        try {
+            LogService logService = context.getService(LogService.class);
+            for (String input : rawInputs) {
+                String[] fileAndDataset = splitInput(input);
+                String dataset = fileAndDataset[1] == null ? "data" : fileAndDataset[1];
+                copy(fileAndDataset[0], dataset, outputFormat.replace("{nickname}", nickname(fileAndDataset)), logService);
+            }
+        } finally {
+            context.dispose();
+        }
+    }
+
+    private static <T extends RealType<T> & NativeType<T>> void copy(String file, String dataset, String output, LogService logService) {
+        ImgPlus<T> img = new Hdf5DataSetReader<T>(file, dataset, "tzyxc", logService, null).read();
+        new Hdf5DataSetWriter<>(img, output, "exported_data", 0, logService, null).write();
+    }
+
+    /**
+     * @return the file and the dataset path of an input, null if it is given without one
+     */
+    private static String[] splitInput(String input) {
+        int extension = input.indexOf(".h5");
+        if (extension < 0 || extension + 3 == input.length()) {
+            return new String[]{input, null};
+        }
+        return new String[]{input.substring(0, extension + 3), input.substring(extension + 4)};
+    }
+
+    /**
+     * @return the nickname ilastik gives an input: its file name without extension, followed by the dataset path
+     * for inputs given with one
+     */
+    private static String nickname(String[] fileAndDataset) {
+        String name = new File(fileAndDataset[0]).getName();
+        String stem = name.substring(0, name.lastIndexOf('.'));
+        return fileAndDataset[1] == null ? stem : stem + "-" + fileAndDataset[1].replace('/', '-');
+    }
+}
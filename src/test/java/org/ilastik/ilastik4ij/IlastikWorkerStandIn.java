@@ -0,0 +1,46 @@
+package org.ilastik.ilastik4ij;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Stands in for an ilastik worker in {@link IlastikWorkerTest}: speaks the worker protocol on
+ * stdin/stdout and writes its process name to the output file of every job instead of predicting.
+ * Jobs with {@code --fail} are reported as failed, jobs with {@code --crash} exit the process, and
+ * jobs with {@code --hang} never reply.
+ */
+public class IlastikWorkerStandIn {
+    private static final String OUTPUT_ARG = "--output_filename_format=";
+
+    public static void main(String[] args) throws IOException {
+        final String processName = ManagementFactory.getRuntimeMXBean().getName();
+        BufferedReader jobs = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        String job;
+        while ((job = jobs.readLine()) != null) {
+            List<String> jobArgs = Arrays.asList(job.split("\t"));
+            System.out.println("Running job " + jobArgs + " of project " + args[0]);
+            if (jobArgs.contains("--crash")) {
+                System.exit(3);
+            } else if (jobArgs.contains("--hang")) {
+                jobs.readLine();
+                continue;
+            } else if (jobArgs.contains("--fail")) {
+                System.out.println("ilastik4ij-job-failed requested failure");
+                continue;
+            }
+            for (String arg : jobArgs) {
+                if (arg.startsWith(OUTPUT_ARG)) {
+                    Files.write(Paths.get(arg.substring(OUTPUT_ARG.length())), processName.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            System.out.println("ilastik4ij-job-done");
+        }
+    }
+}
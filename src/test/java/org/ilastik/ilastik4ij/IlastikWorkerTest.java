@@ -0,0 +1,147 @@
+package org.ilastik.ilastik4ij;
+
+import org.ilastik.ilastik4ij.executors.IlastikWorker;
+import org.ilastik.ilastik4ij.util.IOUtils;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.scijava.Context;
+import org.scijava.log.LogService;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class IlastikWorkerTest {
+    private static final List<String> COMMAND = Arrays.asList(
+            new File(System.getProperty("java.home"), "bin" + File.separator + "java").getPath(),
+            "-cp", System.getProperty("java.class.path"),
+            IlastikWorkerStandIn.class.getName(), "--project=test.ilp");
+    private static Context context;
+    private static LogService logService;
+
+    @BeforeClass
+    public static void setUpClass() {
+        context = new Context(LogService.class);
+        logService = context.getService(LogService.class);
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        context.dispose();
+    }
+
+    @Test
+    public void testWorkerIsReused() throws IOException {
+        try (IlastikWorker worker = new IlastikWorker(COMMAND, Collections.emptyMap(), 60000, 0, logService)) {
+            assertFalse("Worker should start with the first job", worker.isRunning());
+            String first = runJob(worker);
+            String second = runJob(worker);
+            assertTrue("Worker should keep running between jobs", worker.isRunning());
+            assertEquals("Both jobs should run in the same process", first, second);
+        }
+    }
+
+    @Test
+    public void testWorkerRestartsAfterCrash() throws IOException {
+        try (IlastikWorker worker = new IlastikWorker(COMMAND, Collections.emptyMap(), 60000, 0, logService)) {
+            String beforeCrash = runJob(worker);
+            try {
+                worker.runJob(Collections.singletonList("--crash"));
+                fail("Crashing job should throw");
+            } catch (IOException expected) {
+                assertFalse("Crashed worker should not be running", worker.isRunning());
+            }
+            assertNotEquals("Worker should be restarted after a crash", beforeCrash, runJob(worker));
+        }
+    }
+
+    @Test
+    public void testFailedJobKeepsWorker() throws IOException {
+        try (IlastikWorker worker = new IlastikWorker(COMMAND, Collections.emptyMap(), 60000, 0, logService)) {
+            String beforeFailure = runJob(worker);
+            try {
+                worker.runJob(Collections.singletonList("--fail"));
+                fail("Failing job should throw");
+            } catch (IOException expected) {
+                assertTrue("Worker should survive a failed job", worker.isRunning());
+            }
+            assertEquals("Worker should be reused after a failed job", beforeFailure, runJob(worker));
+        }
+    }
+
+    @Test
+    public void testIdleWorkerIsStopped() throws Exception {
+        try (IlastikWorker worker = new IlastikWorker(COMMAND, Collections.emptyMap(), 200, 0, logService)) {
+            runJob(worker);
+            for (int i = 0; i < 100 && worker.isRunning(); i++) {
+                Thread.sleep(100);
+            }
+            assertFalse("Idle worker should be stopped", worker.isRunning());
+            runJob(worker);
+            assertTrue("Stopped worker should start again with the next job", worker.isRunning());
+        }
+    }
+
+    @Test
+    public void testConcurrentCallersGetOwnWorkers() {
+        IlastikWorker first = IlastikWorker.acquire(COMMAND, Collections.emptyMap(), 60000, 0, logService);
+        IlastikWorker second = IlastikWorker.acquire(COMMAND, Collections.emptyMap(), 60000, 0, logService);
+        assertNotSame("Leased worker should not be shared", first, second);
+        IlastikWorker.release(first);
+        assertSame("Released worker should be reused", first,
+                IlastikWorker.acquire(COMMAND, Collections.emptyMap(), 60000, 0, logService));
+        IlastikWorker.release(first);
+        IlastikWorker.release(second);
+    }
+
+    @Test
+    public void testHungJobIsAborted() throws IOException {
+        try (IlastikWorker worker = new IlastikWorker(COMMAND, Collections.emptyMap(), 60000, 500, logService)) {
+            String beforeHang = runJob(worker);
+            try {
+                worker.runJob(Collections.singletonList("--hang"));
+                fail("Hung job should throw");
+            } catch (IOException expected) {
+                assertFalse("Hung worker should be killed", worker.isRunning());
+            }
+            assertNotEquals("Worker should be restarted after a hung job", beforeHang, runJob(worker));
+        }
+    }
+
+    @Test
+    public void testStoppedWorkerIsForgotten() {
+        IlastikWorker worker = IlastikWorker.acquire(COMMAND, Collections.emptyMap(), 60000, 0, logService);
+        IlastikWorker.release(worker);
+        worker.close();
+        IlastikWorker next = IlastikWorker.acquire(COMMAND, Collections.emptyMap(), 60000, 0, logService);
+        assertNotSame("Stopped worker should not be leased again", worker, next);
+        IlastikWorker.release(next);
+    }
+
+    /**
+     * @return process name of the worker that ran the job
+     */
+    private static String runJob(IlastikWorker worker) throws IOException {
+        String output = IOUtils.getTemporaryFileName("_worker_out.txt");
+        try {
+            worker.runJob(Arrays.asList("--output_filename_format=" + output, "--output_format=hdf5", "input.h5"));
+            return new String(Files.readAllBytes(Paths.get(output)), StandardCharsets.UTF_8);
+        } finally {
+            new File(output).delete();
+        }
+    }
+}
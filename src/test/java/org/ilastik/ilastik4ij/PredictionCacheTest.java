@@ -0,0 +1,104 @@
+package org.ilastik.ilastik4ij;
+
+import net.imagej.ImgPlus;
+import net.imagej.axis.Axes;
+import net.imagej.axis.AxisType;
+import net.imglib2.Cursor;
+import net.imglib2.img.Img;
+import net.imglib2.img.ImgView;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.type.numeric.integer.LongType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.view.Views;
+import org.ilastik.ilastik4ij.executors.PredictionCache;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class PredictionCacheTest {
+    private static final AxisType[] AXES = {Axes.X, Axes.Y, Axes.Z};
+
+    @Test
+    public void testHashIgnoresContainer() {
+        Img<UnsignedShortType> array = ArrayImgs.unsignedShorts(30, 20, 4);
+        int value = 0;
+        for (UnsignedShortType pixel : array) {
+            pixel.set(value++ % 65536);
+        }
+        Img<UnsignedShortType> cells = new CellImgFactory<>(new UnsignedShortType(), 7).create(30, 20, 4);
+        Cursor<UnsignedShortType> src = Views.flatIterable(array).cursor();
+        Cursor<UnsignedShortType> dst = Views.flatIterable(cells).cursor();
+        while (dst.hasNext()) {
+            dst.next().set(src.next());
+        }
+
+        String hash = PredictionCache.hashImage(new ImgPlus<>(array, "", AXES));
+        assertEquals("Same pixels should have the same hash", hash, PredictionCache.hashImage(new ImgPlus<>(cells, "", AXES)));
+
+        cells.firstElement().set(12345);
+        assertNotEquals("Different pixels should have different hashes", hash,
+                PredictionCache.hashImage(new ImgPlus<>(cells, "", AXES)));
+    }
+
+    @Test
+    public void testHashIgnoresViews() {
+        Img<FloatType> array = ArrayImgs.floats(30, 20, 4);
+        float value = 0;
+        for (FloatType pixel : array) {
+            pixel.set(value += 0.25f);
+        }
+        // a view has no storage arrays, its pixels are read through a cursor
+        Img<FloatType> view = ImgView.wrap(Views.interval(Views.extendZero(array), array), array.factory());
+
+        assertEquals("Same pixels should have the same hash",
+                PredictionCache.hashImage(new ImgPlus<>(array, "", AXES)),
+                PredictionCache.hashImage(new ImgPlus<>(view, "", AXES)));
+    }
+
+    @Test
+    public void testHashTellsLargeIntegersApart() {
+        // both values round to the same double
+        Img<LongType> first = ArrayImgs.longs(new long[]{(1L << 53) + 1}, 1, 1, 1);
+        Img<LongType> second = ArrayImgs.longs(new long[]{1L << 53}, 1, 1, 1);
+        assertNotEquals("Different 64-bit pixels should have different hashes",
+                PredictionCache.hashImage(new ImgPlus<>(first, "", AXES)),
+                PredictionCache.hashImage(new ImgPlus<>(second, "", AXES)));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedOutputsAreEvicted() throws IOException {
+        File directory = Files.createTempDirectory("ilastik4j_cache").toFile();
+        File output = File.createTempFile("ilastik4j", "_out.h5");
+        try {
+            Files.write(output.toPath(), new byte[1000]);
+            PredictionCache cache = new PredictionCache(directory, 2500);
+            assertNull("Empty cache should not have outputs", cache.get("first"));
+
+            cache.put("first", output);
+            cache.put("second", output);
+            assertNotNull("First output should be stored", cache.get("first"));
+            // the second output is now the least recently used one
+            new File(directory, "second.h5").setLastModified(System.currentTimeMillis() - 60000);
+            cache.put("third", output);
+
+            assertNotNull("Recently used output should be kept", cache.get("first"));
+            assertNull("Least recently used output should be evicted", cache.get("second"));
+            assertNotNull("New output should be stored", cache.get("third"));
+        } finally {
+            output.delete();
+            for (File file : directory.listFiles()) {
+                file.delete();
+            }
+            directory.delete();
+        }
+    }
+}